@@ -2,8 +2,10 @@ package belfius.gejb.businessmodeler;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BusinessModelerApplication {
 
     public static void main(String[] args) {
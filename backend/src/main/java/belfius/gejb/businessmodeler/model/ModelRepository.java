@@ -15,5 +15,9 @@ public class ModelRepository {
     private String mainBranch;
     private List branchList;
     private String remoteUrl;
+    /** Number of commits to clone, full history when not set. */
+    private Integer cloneDepth;
+    /** Partial clone filter such as {@code blob:none}; missing blobs are fetched when read. */
+    private String cloneFilter;
     private String defaultCommitUser = "Business Modeler Admin";
 }
@@ -0,0 +1,150 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Cache of blob contents keyed by blob id, shared by all repositories.
+ * <p>
+ * A blob id always denotes the same content, so entries never need invalidation. The cache is bounded
+ * by the total size of the cached blobs, {@code repository.blob-cache.max-size}, and admits entries
+ * with Caffeine's W-TinyLFU policy, so a burst of one-off reads does not push out popular models. Blobs
+ * larger than {@code repository.blob-cache.max-blob-size} are never cached. With
+ * {@code repository.blob-cache.off-heap} the contents are kept in direct buffers outside the Java heap.
+ * Hits, misses and evictions are exported as the {@code cache.*} meters tagged {@code cache=blob}.
+ */
+@Component
+public class BlobCache {
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final Cache<ObjectId, CachedBlob> blobs;
+    private final long maxBlobSize;
+    private final boolean offHeap;
+
+    public BlobCache(
+            MeterRegistry meterRegistry,
+            @Value("${repository.blob-cache.max-size:64MB}") DataSize maxSize,
+            @Value("${repository.blob-cache.max-blob-size:4MB}") DataSize maxBlobSize,
+            @Value("${repository.blob-cache.off-heap:false}") boolean offHeap
+    ) {
+        this.blobs = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((ObjectId blobId, CachedBlob blob) -> blob.size())
+                .recordStats()
+                .build();
+        this.maxBlobSize = Math.min(maxBlobSize.toBytes(), Math.min(maxSize.toBytes(), Integer.MAX_VALUE));
+        this.offHeap = offHeap;
+        CaffeineCacheMetrics.monitor(meterRegistry, blobs, "blob");
+        Gauge.builder("businessmodeler.repository.blob-cache.size", blobs, BlobCache::weightedSize)
+                .description("Total size of the cached blobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the cached blob or null when it is not cached
+     */
+    public CachedBlob get(ObjectId blobId) {
+        return blobs.getIfPresent(blobId);
+    }
+
+    /**
+     * @return whether a blob of the given size is small enough to be cached
+     */
+    public boolean accepts(long size) {
+        return size <= maxBlobSize;
+    }
+
+    /**
+     * Cache the content of a blob. The content must not be modified afterwards.
+     *
+     * @return the cached blob
+     */
+    public CachedBlob put(ObjectId blobId, byte[] content) {
+        ByteBuffer buffer = offHeap
+                ? ByteBuffer.allocateDirect(content.length).put(content).flip()
+                : ByteBuffer.wrap(content);
+        CachedBlob blob = new CachedBlob(buffer);
+        blobs.put(blobId.copy(), blob);
+        return blob;
+    }
+
+    /**
+     * Cache the content of an open blob. Off the heap, the content is copied from the loader's stream
+     * straight into a direct buffer, without filling a heap array first.
+     *
+     * @return the cached blob
+     */
+    public CachedBlob put(ObjectId blobId, ObjectLoader loader) throws IOException {
+        if (!offHeap) {
+            return put(blobId, loader.getCachedBytes());
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.toIntExact(loader.getSize()));
+        try (InputStream content = loader.openStream()) {
+            byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, buffer.capacity())];
+            while (buffer.hasRemaining()) {
+                int length = content.read(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+                if (length < 0) {
+                    throw new EOFException("blob " + blobId.name() + " is shorter than its size " + buffer.capacity());
+                }
+                buffer.put(chunk, 0, length);
+            }
+        }
+        CachedBlob blob = new CachedBlob(buffer.flip());
+        blobs.put(blobId.copy(), blob);
+        return blob;
+    }
+
+    private static long weightedSize(Cache<ObjectId, CachedBlob> blobs) {
+        return blobs.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    /**
+     * Immutable content of a cached blob, on or off the heap.
+     */
+    public static final class CachedBlob {
+        private final ByteBuffer content;
+
+        private CachedBlob(ByteBuffer content) {
+            this.content = content;
+        }
+
+        public int size() {
+            return content.limit();
+        }
+
+        /**
+         * Write the whole content to the output stream. The output stream is not closed.
+         */
+        public void writeTo(OutputStream outputStream) throws IOException {
+            ByteBuffer view = content.duplicate();
+            if (view.hasArray()) {
+                outputStream.write(view.array(), view.arrayOffset(), view.remaining());
+                return;
+            }
+            byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, view.remaining())];
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                outputStream.write(chunk, 0, length);
+            }
+        }
+    }
+}
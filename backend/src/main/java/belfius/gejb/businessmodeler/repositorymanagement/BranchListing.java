@@ -0,0 +1,14 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import java.util.List;
+
+/**
+ * One page of the branches of a repository.
+ *
+ * @param local       full names of the local branches on this page
+ * @param remote      full names of the remote-tracking branches on this page
+ * @param localTotal  number of local branches matching the filter, across all pages
+ * @param remoteTotal number of remote-tracking branches matching the filter, across all pages
+ */
+public record BranchListing(List<String> local, List<String> remote, int localTotal, int remoteTotal) {
+}
@@ -0,0 +1,60 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.eclipse.jgit.lib.Constants;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view of the branch refs of a repository at one point in time.
+ * <p>
+ * Local and remote-tracking branches are kept apart and sorted by full ref name, so membership
+ * checks are binary searches and pages can be cut without touching the ref database.
+ */
+public class BranchSnapshot {
+
+    private final List<String> localBranches;
+    private final List<String> remoteBranches;
+
+    BranchSnapshot(List<String> localBranches, List<String> remoteBranches) {
+        this.localBranches = localBranches.stream().sorted().toList();
+        this.remoteBranches = remoteBranches.stream().sorted().toList();
+    }
+
+    public boolean contains(String refName) {
+        List<String> branches = refName.startsWith(Constants.R_HEADS) ? localBranches : remoteBranches;
+        return Collections.binarySearch(branches, refName) >= 0;
+    }
+
+    /**
+     * Cut a page out of the snapshot. Local and remote-tracking branches are paged independently.
+     *
+     * @param prefix optional prefix of the short branch name, e.g. {@code feature/}
+     * @param offset number of matching branches to skip per list
+     * @param limit  maximum number of branches to return per list
+     */
+    public BranchListing page(String prefix, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        String filter = prefix == null ? "" : prefix;
+        List<String> local = localBranches.stream()
+                .filter(name -> name.startsWith(filter, Constants.R_HEADS.length()))
+                .toList();
+        List<String> remote = remoteBranches.stream()
+                .filter(name -> remoteShortName(name).startsWith(filter))
+                .toList();
+        return new BranchListing(slice(local, offset, limit), slice(remote, offset, limit), local.size(), remote.size());
+    }
+
+    private static String remoteShortName(String refName) {
+        int remoteEnd = refName.indexOf('/', Constants.R_REMOTES.length());
+        return remoteEnd < 0 ? "" : refName.substring(remoteEnd + 1);
+    }
+
+    private static List<String> slice(List<String> branches, int offset, int limit) {
+        int from = Math.min(offset, branches.size());
+        int to = (int) Math.min((long) from + limit, branches.size());
+        return branches.subList(from, to);
+    }
+}
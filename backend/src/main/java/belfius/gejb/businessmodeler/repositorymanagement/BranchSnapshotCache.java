@@ -0,0 +1,71 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link BranchSnapshot} instances keyed by git directory.
+ * <p>
+ * JGit fires a {@link RefsChangedEvent} whenever a ref of an open repository is updated or found to
+ * have changed on disk; the snapshot of that repository is dropped and rebuilt on the next read.
+ * Callers that change refs outside JGit's notice (e.g. after a fetch) call {@link #invalidate}.
+ */
+@Component
+public class BranchSnapshotCache {
+
+    private final ConcurrentMap<Path, BranchSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final ListenerHandle listenerHandle;
+
+    public BranchSnapshotCache() {
+        this.listenerHandle = Repository.getGlobalListenerList().addRefsChangedListener(this::onRefsChanged);
+    }
+
+    /**
+     * @return the cached snapshot of the repository, building it when needed
+     */
+    public BranchSnapshot get(JGitRepository jGitRepository) throws IOException {
+        Path key = keyOf(jGitRepository.getRepository());
+        BranchSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        // only publish the new snapshot when no ref changed while it was being built
+        long generation = generationOf(key).get();
+        BranchSnapshot loaded = jGitRepository.branchSnapshot();
+        snapshots.compute(key, (path, existing) -> generationOf(path).get() == generation ? loaded : existing);
+        return loaded;
+    }
+
+    public void invalidate(Repository repository) {
+        Path key = keyOf(repository);
+        generationOf(key).incrementAndGet();
+        snapshots.remove(key);
+    }
+
+    @PreDestroy
+    public void close() {
+        listenerHandle.remove();
+    }
+
+    private void onRefsChanged(RefsChangedEvent event) {
+        invalidate(event.getRepository());
+    }
+
+    private AtomicLong generationOf(Path key) {
+        return generations.computeIfAbsent(key, path -> new AtomicLong());
+    }
+
+    private static Path keyOf(Repository repository) {
+        return repository.getDirectory().toPath().toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,23 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Thrown when a commit could not be made because the branch does not point at the expected commit.
+ */
+public class CommitConflictException extends RuntimeException {
+
+    private final transient ObjectId currentHead;
+
+    public CommitConflictException(String message, ObjectId currentHead) {
+        super(message);
+        this.currentHead = currentHead;
+    }
+
+    /**
+     * @return commit the branch points at now, or null when the branch does not exist
+     */
+    public ObjectId getCurrentHead() {
+        return currentHead;
+    }
+}
@@ -11,4 +11,6 @@ public class CommitFileRequest {
     private String commitMessage;
     private String authorName;
     private String authorEmail;
+    /** Commit id the branch must still point at; without it the commit goes on top of the current tip. */
+    private String expectedHead;
 }
@@ -0,0 +1,17 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import lombok.Data;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+@Data
+public class CommitFilesRequest {
+    private List<MultipartFile> files;
+    private String branch;
+    private String commitMessage;
+    private String authorName;
+    private String authorEmail;
+    /** Commit id the branch must still point at; without it the commit goes on top of the current tip. */
+    private String expectedHead;
+}
@@ -0,0 +1,153 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.FetchResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the remote-tracking refs of the configured repositories fresh by fetching in the background.
+ * <p>
+ * Each repository is fetched every {@code repository.fetch.interval}, shifted by a random amount of up
+ * to {@code repository.fetch.jitter} so that repositories sharing a remote do not fetch in lockstep.
+ * At most {@code repository.fetch.threads} fetches run at the same time. The time since the last
+ * successful fetch of each repository is exposed as a staleness gauge.
+ */
+@Slf4j
+@Component
+public class FetchScheduler {
+
+    private final ConcurrentMap<Path, FetchState> states = new ConcurrentHashMap<>();
+    private final RepositoryHandleRegistry repositoryHandleRegistry;
+    private final BranchSnapshotCache branchSnapshotCache;
+    private final GitOperationMetrics gitOperationMetrics;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService executor;
+    private final Duration interval;
+    private final Duration jitter;
+
+    public FetchScheduler(
+            RepositoryHandleRegistry repositoryHandleRegistry,
+            BranchSnapshotCache branchSnapshotCache,
+            GitOperationMetrics gitOperationMetrics,
+            MeterRegistry meterRegistry,
+            @Value("${repository.fetch.threads:2}") int threads,
+            @Value("${repository.fetch.interval:PT5M}") Duration interval,
+            @Value("${repository.fetch.jitter:PT1M}") Duration jitter
+    ) {
+        this.repositoryHandleRegistry = repositoryHandleRegistry;
+        this.branchSnapshotCache = branchSnapshotCache;
+        this.gitOperationMetrics = gitOperationMetrics;
+        this.meterRegistry = meterRegistry;
+        this.executor = Executors.newScheduledThreadPool(threads, Thread.ofPlatform().name("git-fetch-", 0).daemon().factory());
+        this.interval = interval;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Start the periodic fetches of a repository once it is ready.
+     */
+    @EventListener
+    public void scheduleFetches(RepositoryReadyEvent event) {
+        schedule(event.modelRepository(), randomDelay(jitter));
+    }
+
+    /**
+     * Fetch the repository now, on the calling thread.
+     *
+     * @return whether the fetch succeeded
+     */
+    public boolean fetch(ModelRepository modelRepository) {
+        FetchState state = stateOf(modelRepository);
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "fetch")) {
+            FetchResult result = handle.repository().fetch(modelRepository.getUsername(), modelRepository.getPassword());
+            if (result != null) {
+                operation.objects(result.getTrackingRefUpdates().size());
+                if (!result.getTrackingRefUpdates().isEmpty()) {
+                    branchSnapshotCache.invalidate(handle.repository().getRepository());
+                    log.debug("Fetched {} updated refs for repository {}", result.getTrackingRefUpdates().size(), modelRepository.getName());
+                }
+            }
+            state.lastSuccess = Instant.now();
+            operation.succeeded();
+            return true;
+        } catch (GitAPIException | RuntimeException e) {
+            log.warn("Fetch of repository {} failed", modelRepository.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * @return time since the last successful fetch of the repository, or null when it was never fetched
+     */
+    public Duration staleness(ModelRepository modelRepository) {
+        Instant lastSuccess = stateOf(modelRepository).lastSuccess;
+        return lastSuccess == null ? null : Duration.between(lastSuccess, Instant.now());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void schedule(ModelRepository modelRepository, Duration delay) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.schedule(() -> {
+            fetch(modelRepository);
+            schedule(modelRepository, interval.plus(randomDelay(jitter.multipliedBy(2))).minus(jitter));
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static Duration randomDelay(Duration bound) {
+        return bound.isZero() ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(bound.toMillis() + 1));
+    }
+
+    private FetchState stateOf(ModelRepository modelRepository) {
+        return states.computeIfAbsent(RepositoryHandleRegistry.keyOf(modelRepository), path -> {
+            FetchState state = new FetchState(Instant.now());
+            Gauge.builder("businessmodeler.repository.fetch.staleness", state, FetchState::stalenessSeconds)
+                    .description("Time since the remote-tracking refs were last fetched successfully")
+                    .baseUnit("seconds")
+                    .tag("project", String.valueOf(modelRepository.getProjectCode()))
+                    .tag("repository", String.valueOf(modelRepository.getName()))
+                    .register(meterRegistry);
+            return state;
+        });
+    }
+
+    private static final class FetchState {
+        private final Instant tracked;
+        private volatile Instant lastSuccess;
+
+        private FetchState(Instant tracked) {
+            this.tracked = tracked;
+        }
+
+        /**
+         * Repositories that were never fetched count as stale since they were first tracked.
+         */
+        private double stalenessSeconds() {
+            Instant since = lastSuccess == null ? tracked : lastSuccess;
+            return Duration.between(since, Instant.now()).toMillis() / 1000.0;
+        }
+    }
+}
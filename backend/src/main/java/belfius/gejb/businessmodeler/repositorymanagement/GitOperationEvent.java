@@ -0,0 +1,42 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one git operation, emitted by {@link GitOperationMetrics}.
+ */
+@Name("belfius.businessmodeler.GitOperation")
+@Label("Git Operation")
+@Category({"Business Modeler", "Git"})
+@Description("A git operation against a model repository")
+@StackTrace(false)
+final class GitOperationEvent extends jdk.jfr.Event {
+
+    @Label("Project")
+    String project;
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Branch")
+    String branch;
+
+    @Label("Objects")
+    @Description("Number of files, entries, refs or branches handled by the operation")
+    int objects;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
@@ -0,0 +1,138 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records latency, errors and bytes transferred of git operations, tagged by project code,
+ * repository and operation.
+ * <p>
+ * Meters:
+ * <ul>
+ *     <li>{@code businessmodeler.git.operation} - latency histogram, additionally tagged with the outcome</li>
+ *     <li>{@code businessmodeler.git.operation.errors} - operations that did not complete</li>
+ *     <li>{@code businessmodeler.git.operation.bytes} - content bytes read or written by the operation</li>
+ *     <li>{@code businessmodeler.git.operation.coalesced} - requests that shared an identical operation already in flight</li>
+ * </ul>
+ * Each operation is also emitted as a {@link GitOperationEvent} to the flight recorder. The event is
+ * only filled in and committed while a recording has it enabled.
+ */
+@Component
+public class GitOperationMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public GitOperationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Start timing an operation. The operation counts as failed unless {@link Operation#succeeded()}
+     * is called before it is closed.
+     */
+    public Operation start(ModelRepository modelRepository, String operation) {
+        return new Operation(String.valueOf(modelRepository.getProjectCode()), String.valueOf(modelRepository.getName()), operation);
+    }
+
+    /**
+     * Count a request that was answered by an identical operation already in flight instead of running its own.
+     */
+    public void coalesced(ModelRepository modelRepository, String operation) {
+        Counter.builder("businessmodeler.git.operation.coalesced")
+                .description("Requests that shared an identical git operation already in flight")
+                .tags("project", String.valueOf(modelRepository.getProjectCode()), "repository", String.valueOf(modelRepository.getName()), "operation", operation)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * A running git operation, to be closed when it is done, preferably with try-with-resources.
+     */
+    public class Operation implements AutoCloseable {
+        private final String project;
+        private final String repository;
+        private final String operation;
+        private final Tags tags;
+        private final Timer.Sample sample;
+        private final GitOperationEvent event = new GitOperationEvent();
+        private String branch;
+        private int objects;
+        private long bytes = -1;
+        private boolean succeeded;
+
+        private Operation(String project, String repository, String operation) {
+            this.project = project;
+            this.repository = repository;
+            this.operation = operation;
+            this.tags = Tags.of("project", project, "repository", repository, "operation", operation);
+            this.sample = Timer.start(meterRegistry);
+            event.begin();
+        }
+
+        /**
+         * Name the branch the operation works on; only reported to the flight recorder.
+         */
+        public void branch(String branch) {
+            this.branch = branch;
+        }
+
+        /**
+         * Add files, entries, refs or branches handled by this operation; only reported to the flight recorder.
+         */
+        public void objects(int objects) {
+            this.objects += objects;
+        }
+
+        /**
+         * Add content bytes read or written by this operation.
+         */
+        public void bytes(long bytes) {
+            this.bytes = Math.max(this.bytes, 0) + bytes;
+        }
+
+        public void succeeded() {
+            this.succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.project = project;
+                event.repository = repository;
+                event.operation = operation;
+                event.branch = branch;
+                event.objects = objects;
+                event.bytes = Math.max(bytes, 0);
+                event.succeeded = succeeded;
+                event.commit();
+            }
+            sample.stop(Timer.builder("businessmodeler.git.operation")
+                    .description("Latency of git operations")
+                    .tags(tags)
+                    .tag("outcome", succeeded ? "success" : "error")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            if (!succeeded) {
+                Counter.builder("businessmodeler.git.operation.errors")
+                        .description("Git operations that failed")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .increment();
+            }
+            if (bytes >= 0) {
+                DistributionSummary.builder("businessmodeler.git.operation.bytes")
+                        .description("Content bytes transferred by git operations")
+                        .baseUnit("bytes")
+                        .tags(tags)
+                        .register(meterRegistry)
+                        .record(bytes);
+            }
+        }
+    }
+}
@@ -3,38 +3,81 @@ package belfius.gejb.businessmodeler.repositorymanagement;
 import belfius.gejb.businessmodeler.model.ModelRepository;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.InvalidConfigurationException;
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TreeFormatter;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * A convenience wrapper around JGit that exposes common Git repository functionality.
  *
  * This class supports:
- * - init, clone, open
+ * - init (explicitly), clone, open
  * - status
  * - add (all)
- * - commit
+ * - commit (through the working tree, or directly into the object database)
  * - branches: list, create, checkout
- * - pull, push
+ * - fetch, pull, push
  * - log
+ * - object database reads (branch to commit, file name index of a tree, blob loading)
+ * - maintenance (repack, prune, commit-graph)
  *
  * Extend this class with more operations as needed.
  */
@@ -43,52 +86,108 @@ import java.util.stream.Stream;
 @AllArgsConstructor
 public class JGitRepository implements Closeable {
 
+    private static final String PROMISOR = "promisor";
+    private static final String PARTIAL_CLONE_FILTER = "partialclonefilter";
+
     private final Path workingDir;
     private final Git git;
     private final ModelRepository modelRepository;
 
 
+    /**
+     * Open the existing repository at the configured path.
+     *
+     * @throws RepositoryMissingException when there is no git repository at the path
+     */
     public JGitRepository(ModelRepository modelRepository){
         this.modelRepository = modelRepository;
         this.workingDir = Path.of(modelRepository.getPath());
+        if (!Files.isDirectory(workingDir) || !isGitRepo(workingDir.toFile())) {
+            throw new RepositoryMissingException("No git repository for " + modelRepository.getName() + " at " + workingDir);
+        }
         try {
-            this.git = initGitRepository(workingDir);
+            this.git = openGitRepository(workingDir);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-
     /**
-     * Clone a remote repository into the given local directory.
+     * Create an empty repository at the configured path, or open the one that is already there.
+     * Only for repositories that are deliberately created locally; configured repositories with a
+     * remote are cloned with {@link #cloneRepository}.
      */
-    public JGitRepository cloneRepository(ModelRepository modelRepository) throws GitAPIException, IOException {
-        Git gitRepo = Git.cloneRepository()
-                .setURI(modelRepository.getRemoteUrl())
-                .setDirectory(Path.of(modelRepository.getPath()).toFile())
-                .setCredentialsProvider(credentials(modelRepository.getUsername(), modelRepository.getPassword()))
-                .call();
-
-        return new JGitRepository(workingDir, gitRepo, modelRepository);
-    }
-
-
-
-    private static Git initGitRepository(Path workingDir) throws IOException {
+    public static JGitRepository init(ModelRepository modelRepository) throws IOException {
+        Path workingDir = Path.of(modelRepository.getPath());
         if (!Files.exists(workingDir)) {
             Files.createDirectories(workingDir);
         }
-
         if (!isGitRepo(workingDir.toFile())) {
-            try {
-                return Git.init()
-                        .setDirectory(workingDir.toFile())
-                        .call();
+            try (Git ignored = Git.init()
+                    .setDirectory(workingDir.toFile())
+                    .call()) {
+                // only initialise here, the repository is opened like any existing one
             } catch (GitAPIException e) {
                 throw new IOException("Failed to initialize git repository at " + workingDir, e);
             }
         }
+        return new JGitRepository(modelRepository);
+    }
+
+
+    /**
+     * Clone the remote repository into the configured local directory.
+     * The clone is closed again, open it afterwards like any existing repository.
+     * <p>
+     * A positive {@code cloneDepth} makes a shallow clone, a {@code cloneFilter} such as {@code blob:none}
+     * a partial clone. Partial clones are recorded as such in the git config, like git does, and are not
+     * checked out since that would need the filtered blobs; only the default branch is created.
+     */
+    public static void cloneRepository(ModelRepository modelRepository) throws GitAPIException, IOException {
+        FilterSpec filter = filterSpec(modelRepository.getCloneFilter());
+        CloneCommand clone = Git.cloneRepository()
+                .setURI(modelRepository.getRemoteUrl())
+                .setDirectory(Path.of(modelRepository.getPath()).toFile())
+                .setCredentialsProvider(credentials(modelRepository.getUsername(), modelRepository.getPassword()))
+                .setNoCheckout(!filter.isNoOp());
+        if (modelRepository.getCloneDepth() != null && modelRepository.getCloneDepth() > 0) {
+            clone.setDepth(modelRepository.getCloneDepth());
+        }
+        if (!filter.isNoOp()) {
+            clone.setTransportConfigCallback(transport -> transport.setFilterSpec(filter));
+        }
+        try (Git git = clone.call()) {
+            if (!filter.isNoOp()) {
+                Repository repository = git.getRepository();
+                StoredConfig config = repository.getConfig();
+                config.setBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, PROMISOR, true);
+                config.setString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, PARTIAL_CLONE_FILTER, modelRepository.getCloneFilter());
+                config.save();
+                createDefaultBranch(repository);
+            }
+        }
+    }
 
+    private static void createDefaultBranch(Repository repository) throws IOException {
+        Ref head = repository.exactRef(Constants.HEAD);
+        if (head == null || !head.isSymbolic() || head.getObjectId() != null) {
+            return;
+        }
+        String branch = Repository.shortenRefName(head.getTarget().getName());
+        Ref remoteBranch = repository.exactRef(RepositoryManager.REMOTE_BRANCH_PREFIX + branch);
+        if (remoteBranch != null) {
+            RefUpdate update = repository.updateRef(RepositoryManager.LOCAL_BRANCH_PREFIX + branch);
+            update.setNewObjectId(remoteBranch.getObjectId());
+            update.setExpectedOldObjectId(ObjectId.zeroId());
+            update.update();
+        }
+    }
+
+    private static FilterSpec filterSpec(String filter) throws IOException {
+        return filter == null || filter.isBlank() ? FilterSpec.NO_FILTER : FilterSpec.fromFilterLine(filter);
+    }
+
+    private static Git openGitRepository(Path workingDir) throws IOException {
         FileRepositoryBuilder builder = new FileRepositoryBuilder();
         Repository repository = builder
                 .setWorkTree(workingDir.toFile())
@@ -161,6 +260,21 @@ public class JGitRepository implements Closeable {
         }
     }
 
+    /**
+     * Creates a new branch pointing at the given commit, without checking anything out.
+     *
+     * @param branchName the name of the new branch, e.g. "feature/foo"
+     * @param startPoint commit the new branch points at
+     */
+    public void createBranch(String branchName, ObjectId startPoint) throws GitAPIException, IOException {
+        try (RevWalk revWalk = new RevWalk(getRepository())) {
+            git.branchCreate()
+                    .setName(branchName)
+                    .setStartPoint(revWalk.parseCommit(startPoint))
+                    .call();
+        }
+    }
+
     /**
      * Push a single branch to the configured remote.
      *
@@ -177,6 +291,84 @@ public class JGitRepository implements Closeable {
                 .call();
     }
 
+    /**
+     * Push several branches to the configured remote in a single push.
+     *
+     * @param branchNames branches to push (refs/heads will be prefixed automatically)
+     * @return push results; check the status of each remote ref update
+     */
+    public Iterable<PushResult> pushBranches(Collection<String> branchNames, String username, String password) throws GitAPIException {
+        if (branchNames.isEmpty()) {
+            throw new IllegalArgumentException("branchNames must not be empty");
+        }
+
+        PushCommand push = git.push()
+                .setCredentialsProvider(credentials(username, password));
+        branchNames.forEach(branchName -> push.add(RepositoryManager.LOCAL_BRANCH_PREFIX + branchName));
+        return push.call();
+    }
+
+    /**
+     * git fetch --prune origin
+     * <p>
+     * Only remote-tracking refs and the object database change; local branches, the index and the
+     * working tree are left alone. The fetch negotiates with the objects reachable from the local refs,
+     * so only objects the repository does not have yet are transferred.
+     *
+     * @return the fetch result or null when the repository has no origin remote
+     */
+    public FetchResult fetch(String username, String password) throws GitAPIException {
+        if (!getRepository().getRemoteNames().contains(Constants.DEFAULT_REMOTE_NAME)) {
+            return null;
+        }
+        return filteredFetch(username, password)
+                .setRemoveDeletedRefs(true)
+                .call();
+    }
+
+    /**
+     * Fetch the full history of a shallow clone. Does nothing when the repository is not shallow.
+     * A partial clone keeps its filter, so only the older commits and trees are transferred.
+     */
+    public void unshallow() throws GitAPIException, IOException {
+        if (!isShallow()) {
+            return;
+        }
+        filteredFetch(modelRepository.getUsername(), modelRepository.getPassword())
+                .setUnshallow(true)
+                .call();
+    }
+
+    private FetchCommand filteredFetch(String username, String password) throws InvalidConfigurationException {
+        FetchCommand fetch = git.fetch()
+                .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                .setCredentialsProvider(credentials(username, password));
+        String partialCloneFilter = partialCloneFilter();
+        if (partialCloneFilter != null) {
+            try {
+                FilterSpec filter = filterSpec(partialCloneFilter);
+                fetch.setTransportConfigCallback(transport -> transport.setFilterSpec(filter));
+            } catch (IOException e) {
+                throw new InvalidConfigurationException("Invalid partial clone filter " + partialCloneFilter, e);
+            }
+        }
+        return fetch;
+    }
+
+    /**
+     * @return whether the repository was cloned with a limited depth and still misses older history
+     */
+    public boolean isShallow() throws IOException {
+        return !getRepository().getObjectDatabase().getShallowCommits().isEmpty();
+    }
+
+    /**
+     * @return the filter of a partial clone, or null when the repository holds all objects
+     */
+    public String partialCloneFilter() {
+        return getRepository().getConfig().getString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, PARTIAL_CLONE_FILTER);
+    }
+
     /**
      * git checkout <branchName>
      */
@@ -200,6 +392,21 @@ public class JGitRepository implements Closeable {
         return result;
     }
 
+    /**
+     * Read all local and remote-tracking branch refs straight from the ref database.
+     */
+    public BranchSnapshot branchSnapshot() throws IOException {
+        List<String> localBranches = new ArrayList<>();
+        List<String> remoteBranches = new ArrayList<>();
+        for (Ref ref : getRepository().getRefDatabase().getRefsByPrefix(Constants.R_HEADS)) {
+            localBranches.add(ref.getName());
+        }
+        for (Ref ref : getRepository().getRefDatabase().getRefsByPrefix(Constants.R_REMOTES)) {
+            remoteBranches.add(ref.getName());
+        }
+        return new BranchSnapshot(localBranches, remoteBranches);
+    }
+
     /**
      * git pull
      */
@@ -225,7 +432,17 @@ public class JGitRepository implements Closeable {
      *
      * @param maxCommits maximum number of commits to return
      */
-    public List<RevCommit> log(int maxCommits) throws GitAPIException {
+    public List<RevCommit> log(int maxCommits) throws GitAPIException, IOException {
+        List<RevCommit> commits = readLog(maxCommits);
+        if (commits.size() < maxCommits && isShallow()) {
+            // the history ends at the shallow boundary, fetch the rest before answering
+            unshallow();
+            commits = readLog(maxCommits);
+        }
+        return commits;
+    }
+
+    private List<RevCommit> readLog(int maxCommits) throws GitAPIException {
         Iterable<RevCommit> log = git.log().setMaxCount(maxCommits).call();
         List<RevCommit> commits = new ArrayList<>();
         for (RevCommit commit : log) {
@@ -235,36 +452,394 @@ public class JGitRepository implements Closeable {
     }
 
     /**
-     * Find the first file in the repository that matches the given filename (searches recursively).
+     * Resolve a branch to the commit it points at. Short names are looked up as local branches first
+     * and as remote-tracking branches of {@code origin} second; full ref names are used as given.
      *
-     * @param fileName file name to look for (no path required)
-     * @return matching File or null when not found
+     * @param branchName branch name, e.g. "main", "refs/heads/main" or "refs/remotes/origin/main"
+     * @return commit id or null when no such branch exists
      */
-    public File findFileByName(String fileName) throws IOException {
-        if (fileName == null || fileName.isBlank()) {
-            throw new IllegalArgumentException("fileName must not be null or blank");
+    public ObjectId resolveBranch(String branchName) throws IOException {
+        if (branchName == null || branchName.isBlank()) {
+            throw new IllegalArgumentException("branchName must not be blank");
         }
-        if (!Files.exists(workingDir)) {
-            return null;
+        Ref ref = getRepository().getRefDatabase().firstExactRef(
+                RepositoryManager.LOCAL_BRANCH_PREFIX + branchName,
+                RepositoryManager.REMOTE_BRANCH_PREFIX + branchName,
+                branchName
+        );
+        return ref == null ? null : ref.getObjectId();
+    }
+
+    /**
+     * Check that the repository can be read: its object database exists and the tip commit of the main
+     * branch can be parsed. The main branch may only be missing in a repository without a remote,
+     * which starts out empty.
+     */
+    public void verify() throws IOException {
+        if (!getRepository().getObjectDatabase().exists()) {
+            throw new IOException("No object database in " + getRepository().getDirectory());
         }
+        getRepository().getRefDatabase().getRefs();
+        String mainBranch = modelRepository.getMainBranch();
+        ObjectId tip = mainBranch == null || mainBranch.isBlank() ? null : resolveBranch(mainBranch);
+        if (tip != null) {
+            resolveTree(tip);
+        } else if (modelRepository.getRemoteUrl() != null) {
+            throw new IOException("Main branch " + mainBranch + " of " + modelRepository.getName() + " does not exist");
+        }
+    }
 
-        try (Stream<Path> paths = Files.walk(workingDir)) {
-            return paths
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().equals(fileName))
-                    .findFirst()
-                    .map(Path::toFile)
-                    .orElse(null);
+    /**
+     * Look up the root tree of a commit.
+     */
+    public ObjectId resolveTree(ObjectId commitId) throws IOException {
+        try (RevWalk revWalk = new RevWalk(getRepository())) {
+            return revWalk.parseCommit(commitId).getTree().copy();
         }
     }
 
+    /**
+     * Build a file name index over all files of the given tree (searches recursively).
+     * Only the object database is read; the working tree and the index are not touched.
+     */
+    public TreeFileIndex indexFiles(ObjectId treeId) throws IOException {
+        Map<String, RepositoryFile> filesByName = new HashMap<>();
+        try (ObjectReader reader = getRepository().newObjectReader();
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(treeId);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+                    filesByName.putIfAbsent(treeWalk.getNameString(), new RepositoryFile(treeWalk.getPathString(), treeWalk.getObjectId(0)));
+                }
+            }
+        }
+        return new TreeFileIndex(treeId, filesByName);
+    }
+
+    /**
+     * Compute the id a blob with the given content has, without writing anything.
+     *
+     * @param content stream positioned at the start of the content, not closed by this method
+     * @param length  exact number of bytes to read from the stream
+     */
+    public static ObjectId blobIdFor(InputStream content, long length) throws IOException {
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, length, content);
+    }
+
+    /**
+     * Look up the blob at a path in the tree of a commit.
+     *
+     * @param path repository relative file path, "/" separated
+     * @return blob id or null when there is no file at the path
+     */
+    public ObjectId blobAt(ObjectId commitId, String path) throws IOException {
+        try (ObjectReader reader = getRepository().newObjectReader();
+             TreeWalk treeWalk = TreeWalk.forPath(reader, path, resolveTree(commitId))) {
+            return treeWalk == null || treeWalk.isSubtree() ? null : treeWalk.getObjectId(0);
+        }
+    }
+
+    /**
+     * Write a blob into the object database.
+     *
+     * @return id of the blob
+     */
+    public ObjectId insertBlob(byte[] content) throws IOException {
+        try (ObjectInserter inserter = getRepository().newObjectInserter()) {
+            ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content);
+            inserter.flush();
+            return blobId;
+        }
+    }
+
+    /**
+     * Stream a blob into the object database. The content is hashed while it is written and never
+     * held on the heap as a whole.
+     *
+     * @param content stream positioned at the start of the content, not closed by this method
+     * @param length  exact number of bytes to read from the stream
+     * @return id of the blob
+     */
+    public ObjectId insertBlob(InputStream content, long length) throws IOException {
+        try (ObjectInserter inserter = getRepository().newObjectInserter()) {
+            ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, length, content);
+            inserter.flush();
+            return blobId;
+        }
+    }
+
+    /**
+     * Commit changed files on top of a branch without touching the working tree or the index.
+     * <p>
+     * Only the trees on the paths of the changed files are rewritten; all other subtrees are reused
+     * by id, so the cost grows with the number of changed files rather than with the size of the
+     * repository. The branch ref is moved with a compare-and-set against the parent commit. When the
+     * local branch does not exist yet it is created on top of the remote-tracking branch; a branch
+     * without any parent is only created for the first commit of an empty repository.
+     *
+     * @param branchName branch to commit on, e.g. "main" or "refs/heads/main"
+     * @param changes    repository relative file paths ("/" separated) mapped to the blob holding their new content
+     * @param message    commit message
+     * @param author     author of the commit; the committer is taken from the repository configuration
+     * @return the new commit
+     * @throws RefNotFoundException        when the branch does not exist
+     * @throws ConcurrentRefUpdateException when the branch moved while the commit was being built
+     */
+    public RevCommit commitFiles(String branchName, Map<String, ObjectId> changes, String message, PersonIdent author) throws IOException, GitAPIException {
+        return commitFiles(branchName, changes, message, author, null);
+    }
+
+    /**
+     * Commit changed files on top of the expected tip of a branch, see {@link #commitFiles(String, Map, String, PersonIdent)}.
+     *
+     * @param expectedParent commit the branch must point at, or null to commit on top of its current tip
+     * @throws ConcurrentRefUpdateException when the branch does not point at the expected parent, or
+     *                                      moved while the commit was being built
+     */
+    public RevCommit commitFiles(String branchName, Map<String, ObjectId> changes, String message, PersonIdent author, ObjectId expectedParent) throws IOException, GitAPIException {
+        Repository repository = getRepository();
+        String refName = RepositoryManager.LOCAL_BRANCH_PREFIX + branchName.replace(RepositoryManager.LOCAL_BRANCH_PREFIX, "");
+        Ref localRef = repository.exactRef(refName);
+        ObjectId parentId = localRef != null ? localRef.getObjectId() : resolveBranch(branchName);
+        if (parentId == null && !repository.getRefDatabase().getRefsByPrefix(RepositoryManager.LOCAL_BRANCH_PREFIX).isEmpty()) {
+            throw new RefNotFoundException("Branch " + branchName + " does not exist");
+        }
+        if (expectedParent != null && !expectedParent.equals(parentId)) {
+            throw new ConcurrentRefUpdateException(
+                    "Branch " + branchName + " is at " + (parentId == null ? "no commit" : parentId.name()) + " instead of " + expectedParent.name(),
+                    localRef, RefUpdate.Result.REJECTED);
+        }
+
+        try (ObjectInserter inserter = repository.newObjectInserter();
+             ObjectReader reader = inserter.newReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            ObjectId parentTreeId = parentId == null ? null : revWalk.parseCommit(parentId).getTree();
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(writeTree(reader, inserter, parentTreeId, changes));
+            if (parentId != null) {
+                commit.setParentId(parentId);
+            }
+            commit.setAuthor(author);
+            commit.setCommitter(new PersonIdent(repository));
+            commit.setMessage(message);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            RevCommit revCommit = revWalk.parseCommit(commitId);
+            RefUpdate refUpdate = repository.updateRef(refName);
+            refUpdate.setNewObjectId(commitId);
+            refUpdate.setExpectedOldObjectId(localRef != null ? localRef.getObjectId() : ObjectId.zeroId());
+            refUpdate.setRefLogIdent(author);
+            refUpdate.setRefLogMessage("commit: " + revCommit.getShortMessage(), false);
+            RefUpdate.Result result = refUpdate.update(revWalk);
+            switch (result) {
+                case NEW:
+                case FAST_FORWARD:
+                    return revCommit;
+                default:
+                    throw new ConcurrentRefUpdateException(
+                            "Could not update " + refName + " to " + commitId.name() + ", branch was updated concurrently",
+                            repository.exactRef(refName), result);
+            }
+        }
+    }
+
+    /**
+     * Write a copy of {@code treeId} (null for an empty tree) with the given relative paths replaced.
+     */
+    private static ObjectId writeTree(ObjectReader reader, ObjectInserter inserter, ObjectId treeId, Map<String, ObjectId> changes) throws IOException {
+        // entries keyed by their git sort key: the raw name, with a trailing '/' for trees
+        TreeMap<byte[], TreeEntry> entries = new TreeMap<>(Arrays::compareUnsigned);
+        if (treeId != null) {
+            CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId);
+            while (!parser.eof()) {
+                TreeEntry entry = new TreeEntry(parser.getEntryPathString(), parser.getEntryFileMode(), parser.getEntryObjectId());
+                entries.put(entry.sortKey(), entry);
+                parser.next(1);
+            }
+        }
+
+        Map<String, Map<String, ObjectId>> subtreeChanges = new TreeMap<>();
+        changes.forEach((path, blobId) -> {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                TreeEntry existing = entries.remove(Constants.encode(path));
+                entries.remove(Constants.encode(path + "/"));
+                FileMode mode = existing != null && existing.mode() == FileMode.EXECUTABLE_FILE ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+                entries.put(Constants.encode(path), new TreeEntry(path, mode, blobId));
+            } else {
+                subtreeChanges.computeIfAbsent(path.substring(0, slash), name -> new HashMap<>())
+                        .put(path.substring(slash + 1), blobId);
+            }
+        });
+        for (Map.Entry<String, Map<String, ObjectId>> subtree : subtreeChanges.entrySet()) {
+            String name = subtree.getKey();
+            entries.remove(Constants.encode(name));
+            TreeEntry existing = entries.get(Constants.encode(name + "/"));
+            ObjectId subtreeId = writeTree(reader, inserter, existing == null ? null : existing.objectId(), subtree.getValue());
+            entries.put(Constants.encode(name + "/"), new TreeEntry(name, FileMode.TREE, subtreeId));
+        }
+
+        TreeFormatter formatter = new TreeFormatter();
+        for (TreeEntry entry : entries.values()) {
+            formatter.append(entry.name(), entry.mode(), entry.objectId());
+        }
+        return inserter.insert(formatter);
+    }
+
+    private record TreeEntry(String name, FileMode mode, ObjectId objectId) {
+        byte[] sortKey() {
+            return Constants.encode(mode == FileMode.TREE ? name + "/" : name);
+        }
+    }
+
+    /**
+     * List the entries below a directory of the given tree, in tree order. Only the object database is read.
+     *
+     * @param directory directory to list, empty for the root of the tree
+     * @param maxDepth  number of directory levels to list; directories on the last level are listed
+     *                  as entries, directories above it are descended into
+     * @param offset    number of entries to skip
+     * @param limit     maximum number of entries to return
+     * @return paths relative to the repository root, or null when the directory does not exist
+     */
+    public List<String> listEntries(ObjectId treeId, String directory, int maxDepth, int offset, int limit) throws IOException {
+        try (ObjectReader reader = getRepository().newObjectReader();
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            ObjectId directoryId = treeId;
+            String pathPrefix = "";
+            if (!directory.isEmpty()) {
+                try (TreeWalk directoryWalk = TreeWalk.forPath(reader, directory, treeId)) {
+                    if (directoryWalk == null || !directoryWalk.isSubtree()) {
+                        return null;
+                    }
+                    directoryId = directoryWalk.getObjectId(0);
+                    pathPrefix = directory + "/";
+                }
+            }
+            treeWalk.addTree(directoryId);
+            treeWalk.setRecursive(false);
+            List<String> entries = new ArrayList<>();
+            int skipped = 0;
+            while (entries.size() < limit && treeWalk.next()) {
+                if (treeWalk.isSubtree() && treeWalk.getDepth() + 1 < maxDepth) {
+                    treeWalk.enterSubtree();
+                } else if (skipped < offset) {
+                    skipped++;
+                } else {
+                    entries.add(pathPrefix + treeWalk.getPathString());
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Open a blob from the object database. Blobs left out by a partial clone are fetched from origin first.
+     */
+    public ObjectLoader openBlob(ObjectId blobId) throws IOException {
+        try {
+            return getRepository().open(blobId, Constants.OBJ_BLOB);
+        } catch (MissingObjectException e) {
+            if (partialCloneFilter() == null) {
+                throw e;
+            }
+            fetchObject(blobId);
+            return getRepository().open(blobId, Constants.OBJ_BLOB);
+        }
+    }
+
+    private void fetchObject(ObjectId objectId) throws IOException {
+        try {
+            git.fetch()
+                    .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setCredentialsProvider(credentials(modelRepository.getUsername(), modelRepository.getPassword()))
+                    .setRefSpecs(new RefSpec(objectId.name()))
+                    .call();
+        } catch (GitAPIException e) {
+            throw new IOException("Failed to fetch missing object " + objectId.name() + " from origin", e);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Maintenance
+    // ------------------------------------------------------------
+
+    /**
+     * @return loose object, pack and ref counts of the repository
+     */
+    public GC.RepoStatistics statistics() throws IOException {
+        return gc().getStatistics();
+    }
+
+    /**
+     * Pack all objects into a new pack and delete the loose objects and packs it replaces.
+     * A bitmap index is written with the pack unless {@code pack.buildBitmaps} is disabled.
+     */
+    public void repack() throws IOException {
+        gc().repack();
+    }
+
+    /**
+     * Delete unreachable loose objects older than {@code gc.pruneExpire}, two weeks unless configured.
+     */
+    public void prune() throws IOException {
+        try {
+            gc().prune(Set.of());
+        } catch (ParseException e) {
+            throw new IOException("Invalid gc.pruneExpire in " + getRepository().getDirectory(), e);
+        }
+    }
+
+    /**
+     * Write the commit-graph of all commits reachable from the refs and enable {@code core.commitGraph},
+     * so that revision walks read parents and commit times without inflating commits.
+     */
+    public void writeCommitGraph() throws IOException {
+        Repository repository = getRepository();
+        Path graphFile = ((FileRepository) repository).getObjectsDirectory().toPath().resolve("info").resolve("commit-graph");
+        Path temp = graphFile.resolveSibling("commit-graph.tmp");
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            Set<ObjectId> tips = new HashSet<>();
+            for (Ref ref : repository.getRefDatabase().getRefs()) {
+                if (ref.getObjectId() != null && revWalk.peel(revWalk.parseAny(ref.getObjectId())) instanceof RevCommit commit) {
+                    tips.add(commit);
+                }
+            }
+            GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, revWalk);
+            Files.createDirectories(graphFile.getParent());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                new CommitGraphWriter(commits).write(NullProgressMonitor.INSTANCE, out);
+            }
+            Files.move(temp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        StoredConfig config = repository.getConfig();
+        if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+            config.save();
+        }
+    }
+
+    private GC gc() {
+        return new GC((FileRepository) getRepository());
+    }
+
     // ------------------------------------------------------------
     // Utility
     // ------------------------------------------------------------
 
+    /**
+     * Releases the underlying repository. {@link Git} wrappers created around an opened repository
+     * do not close it themselves, so both are closed here.
+     */
     @Override
     public void close() {
         git.close();
+        git.getRepository().close();
     }
 
     // ------------------------------------------------------------
@@ -275,6 +850,7 @@ public class JGitRepository implements Closeable {
         try (Repository repo = new FileRepositoryBuilder()
                 .setWorkTree(dir)
                 .findGitDir(dir)          // climbs parents to locate .git
+                .setMustExist(true)       // without it any directory "is" a repository
                 .build()) {
             return repo.getDirectory() != null; // .git found and parsed
         } catch (IOException e) {
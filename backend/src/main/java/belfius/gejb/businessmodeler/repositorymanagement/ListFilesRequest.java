@@ -0,0 +1,16 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import lombok.Data;
+
+/**
+ * Shape of a tree listing. Without {@code recursive} or {@code depth} only the direct entries of
+ * {@code path} are listed; {@code depth} bounds how many directory levels are descended.
+ */
+@Data
+public class ListFilesRequest {
+    private String path;
+    private boolean recursive;
+    private Integer depth;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+}
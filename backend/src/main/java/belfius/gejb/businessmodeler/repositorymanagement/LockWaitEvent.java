@@ -0,0 +1,31 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event spanning the time a thread waited for a repository lock or admission permit.
+ */
+@Name("belfius.businessmodeler.LockWait")
+@Label("Repository Lock Wait")
+@Category({"Business Modeler", "Git"})
+@Description("Time spent waiting for a branch lock or admission permit")
+@Threshold("1 ms")
+final class LockWaitEvent extends jdk.jfr.Event {
+
+    @Label("Lock")
+    @Description("write or admission")
+    String lock;
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Branch")
+    String branch;
+
+    @Label("Acquired")
+    boolean acquired;
+}
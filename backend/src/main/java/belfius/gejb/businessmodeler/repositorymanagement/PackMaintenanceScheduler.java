@@ -0,0 +1,158 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Repacks the configured repositories once their object database has become fragmented.
+ * <p>
+ * Every commit adds loose objects and every fetch adds a pack, which slows down object lookups and
+ * revision walks over time. During the low-traffic window given by {@code repository.maintenance.cron},
+ * each repository with more than {@code repository.maintenance.loose-objects} loose objects or
+ * {@code repository.maintenance.pack-files} packs is repacked into one pack with a bitmap index, its
+ * expired unreachable objects are pruned and its commit-graph is rewritten.
+ * <p>
+ * No lock is taken: commits and pushes keep running during maintenance. This relies on JGit's GC being
+ * safe against concurrent writers. A repack only deletes loose objects it has packed and packs it has
+ * replaced, objects written meanwhile stay loose, and refs moved meanwhile are read again by the next
+ * run. Pruning only deletes unreachable objects older than {@code gc.pruneExpire}, so the blobs and
+ * trees of a commit still being built are kept; the expiry must therefore not be set to {@code now}.
+ * <p>
+ * Partial clones are not repacked, since writing a pack needs the blobs that were left out, and
+ * shallow clones get no commit-graph, as with git.
+ */
+@Slf4j
+@Component
+public class PackMaintenanceScheduler {
+
+    private final ConcurrentMap<Path, ObjectDatabaseState> states = new ConcurrentHashMap<>();
+    private final RepositoryConfigurationService repositoryConfigurationService;
+    private final RepositoryHandleRegistry repositoryHandleRegistry;
+    private final GitOperationMetrics gitOperationMetrics;
+    private final MeterRegistry meterRegistry;
+    private final long looseObjectThreshold;
+    private final long packFileThreshold;
+    private final Counter maintenanceRuns;
+
+    public PackMaintenanceScheduler(
+            RepositoryConfigurationService repositoryConfigurationService,
+            RepositoryHandleRegistry repositoryHandleRegistry,
+            GitOperationMetrics gitOperationMetrics,
+            MeterRegistry meterRegistry,
+            @Value("${repository.maintenance.loose-objects:1000}") long looseObjectThreshold,
+            @Value("${repository.maintenance.pack-files:20}") long packFileThreshold
+    ) {
+        this.repositoryConfigurationService = repositoryConfigurationService;
+        this.repositoryHandleRegistry = repositoryHandleRegistry;
+        this.gitOperationMetrics = gitOperationMetrics;
+        this.meterRegistry = meterRegistry;
+        this.looseObjectThreshold = looseObjectThreshold;
+        this.packFileThreshold = packFileThreshold;
+        this.maintenanceRuns = meterRegistry.counter("businessmodeler.repository.maintenance.runs");
+    }
+
+    /**
+     * Maintain all configured repositories that exist on disk and crossed a threshold.
+     */
+    @Scheduled(cron = "${repository.maintenance.cron:0 0/30 1-5 * * *}")
+    public void maintainConfiguredRepositories() {
+        for (ModelRepository modelRepository : repositoryConfigurationService.getRepositories()) {
+            if (!RepositoryHandleRegistry.existsOnDisk(modelRepository)) {
+                continue;
+            }
+            try {
+                maintain(modelRepository, false);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Maintenance of repository {} failed", modelRepository.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Maintain the repository on the calling thread when it crossed a threshold, or unconditionally when forced.
+     *
+     * @return whether maintenance ran
+     */
+    public boolean maintain(ModelRepository modelRepository, boolean force) throws IOException {
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository)) {
+            JGitRepository jGitRepository = handle.repository();
+            ObjectDatabaseState state = stateOf(modelRepository);
+            GC.RepoStatistics before = state.update(jGitRepository.statistics());
+            if (!force && before.numberOfLooseObjects < looseObjectThreshold && before.numberOfPackFiles < packFileThreshold) {
+                return false;
+            }
+
+            log.info("Maintaining repository {}: {} loose objects, {} packs", modelRepository.getName(), before.numberOfLooseObjects, before.numberOfPackFiles);
+            if (jGitRepository.partialCloneFilter() == null) {
+                phase(modelRepository, "repack", jGitRepository::repack);
+            }
+            phase(modelRepository, "prune", jGitRepository::prune);
+            if (!jGitRepository.isShallow()) {
+                phase(modelRepository, "commit-graph", jGitRepository::writeCommitGraph);
+            }
+
+            GC.RepoStatistics after = state.update(jGitRepository.statistics());
+            maintenanceRuns.increment();
+            log.info("Maintained repository {}: {} loose objects, {} packs", modelRepository.getName(), after.numberOfLooseObjects, after.numberOfPackFiles);
+            return true;
+        }
+    }
+
+    private void phase(ModelRepository modelRepository, String name, MaintenancePhase phase) throws IOException {
+        try (GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, name)) {
+            phase.run();
+            operation.succeeded();
+        }
+    }
+
+    private ObjectDatabaseState stateOf(ModelRepository modelRepository) {
+        return states.computeIfAbsent(RepositoryHandleRegistry.keyOf(modelRepository), path -> {
+            ObjectDatabaseState state = new ObjectDatabaseState();
+            Gauge.builder("businessmodeler.repository.objects.loose", state, ObjectDatabaseState::looseObjects)
+                    .description("Loose objects in the repository when it was last checked for maintenance")
+                    .tag("project", String.valueOf(modelRepository.getProjectCode()))
+                    .tag("repository", String.valueOf(modelRepository.getName()))
+                    .register(meterRegistry);
+            Gauge.builder("businessmodeler.repository.packs", state, ObjectDatabaseState::packFiles)
+                    .description("Pack files in the repository when it was last checked for maintenance")
+                    .tag("project", String.valueOf(modelRepository.getProjectCode()))
+                    .tag("repository", String.valueOf(modelRepository.getName()))
+                    .register(meterRegistry);
+            return state;
+        });
+    }
+
+    @FunctionalInterface
+    private interface MaintenancePhase {
+        void run() throws IOException;
+    }
+
+    private static final class ObjectDatabaseState {
+        private volatile GC.RepoStatistics statistics = new GC.RepoStatistics();
+
+        private GC.RepoStatistics update(GC.RepoStatistics statistics) {
+            this.statistics = statistics;
+            return statistics;
+        }
+
+        private double looseObjects() {
+            return statistics.numberOfLooseObjects;
+        }
+
+        private double packFiles() {
+            return statistics.numberOfPackFiles;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes committed branches to the remote in the background.
+ * <p>
+ * Callers only record that a branch has to be pushed and return as soon as the local ref moved.
+ * Branches that become pending within {@code repository.push.coalesce-delay} of each other are sent
+ * to the remote in one multi-ref push, and at most one push per repository is in flight. Pushes that
+ * failed in transport are retried with exponential backoff up to {@code repository.push.max-backoff}.
+ * Branches the remote rejected, e.g. because they are no longer a fast-forward, are not retried: they
+ * stay pending with their error until the branch is committed to again. The pending branches of each
+ * repository are journaled inside its git directory, so pushes that were still pending at shutdown
+ * are resumed on the next start.
+ */
+@Slf4j
+@Component
+public class PushScheduler {
+
+    static final String JOURNAL_FILE = "business-modeler-push-journal";
+
+    private final ConcurrentMap<Path, PushQueue> queues = new ConcurrentHashMap<>();
+    private final RepositoryHandleRegistry repositoryHandleRegistry;
+    private final MeterRegistry meterRegistry;
+    private final GitOperationMetrics gitOperationMetrics;
+    private final ScheduledExecutorService executor;
+    private final Duration coalesceDelay;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Counter failedPushes;
+
+    public PushScheduler(
+            RepositoryHandleRegistry repositoryHandleRegistry,
+            MeterRegistry meterRegistry,
+            GitOperationMetrics gitOperationMetrics,
+            @Value("${repository.push.threads:4}") int threads,
+            @Value("${repository.push.coalesce-delay:PT0.5S}") Duration coalesceDelay,
+            @Value("${repository.push.initial-backoff:PT2S}") Duration initialBackoff,
+            @Value("${repository.push.max-backoff:PT5M}") Duration maxBackoff
+    ) {
+        this.repositoryHandleRegistry = repositoryHandleRegistry;
+        this.meterRegistry = meterRegistry;
+        this.gitOperationMetrics = gitOperationMetrics;
+        this.executor = Executors.newScheduledThreadPool(threads, Thread.ofPlatform().name("git-push-", 0).daemon().factory());
+        this.coalesceDelay = coalesceDelay;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.failedPushes = meterRegistry.counter("businessmodeler.repository.push.failures");
+    }
+
+    /**
+     * Record that the given branch has to be pushed and schedule a push for its repository.
+     */
+    public void schedulePush(ModelRepository modelRepository, String branch) {
+        PushQueue queue = queueOf(modelRepository);
+        queue.lock.lock();
+        try {
+            queue.modelRepository = modelRepository;
+            queue.sequence++;
+            PendingPush pending = queue.pending.computeIfAbsent(branchName(branch), name -> new PendingPush(Instant.now()));
+            pending.sequence = queue.sequence;
+            pending.rejected = false;
+            writeJournal(queue);
+            scheduleDrain(queue, coalesceDelay);
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * Push all pending branches of the repository now, on the calling thread, once a push already in
+     * flight has completed. Rejected branches are not pushed again.
+     */
+    public void flush(ModelRepository modelRepository) {
+        drain(queueOf(modelRepository), true);
+    }
+
+    /**
+     * @return the branches of the repository that still have to be pushed, by branch name
+     */
+    public Map<String, PendingPush> pendingPushes(ModelRepository modelRepository) {
+        PushQueue queue = queues.get(RepositoryHandleRegistry.keyOf(modelRepository));
+        if (queue == null) {
+            return Map.of();
+        }
+        queue.lock.lock();
+        try {
+            Map<String, PendingPush> snapshot = new LinkedHashMap<>();
+            queue.pending.forEach((branch, pending) -> snapshot.put(branch, pending.copy()));
+            return snapshot;
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * Resume the pushes of the repository that were journaled before the last shutdown.
+     */
+    @EventListener
+    public void resumeJournaledPushes(RepositoryReadyEvent event) {
+        ModelRepository modelRepository = event.modelRepository();
+        try {
+            for (String branch : readJournal(modelRepository)) {
+                log.info("Resuming pending push of branch '{}' in repository {}", branch, modelRepository.getName());
+                schedulePush(modelRepository, branch);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read push journal of repository {}", modelRepository.getName(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedule a drain unless one is scheduled or in flight already; the drain in flight reschedules
+     * itself when branches are left. Must be called with the queue lock held.
+     */
+    private void scheduleDrain(PushQueue queue, Duration delay) {
+        if (!queue.scheduled && !queue.inFlight && !executor.isShutdown()) {
+            queue.scheduled = true;
+            executor.schedule(() -> drain(queue, false), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Push the pending branches that were not rejected.
+     *
+     * @param wait whether to wait for a drain in flight and push after it, rather than leave the work to it
+     */
+    private void drain(PushQueue queue, boolean wait) {
+        ModelRepository modelRepository;
+        Map<String, Long> batch = new HashMap<>();
+        queue.lock.lock();
+        try {
+            if (!wait) {
+                queue.scheduled = false;
+            }
+            while (queue.inFlight) {
+                if (!wait) {
+                    return;
+                }
+                queue.idle.awaitUninterruptibly();
+            }
+            modelRepository = queue.modelRepository;
+            queue.pending.forEach((branch, pending) -> {
+                if (!pending.rejected) {
+                    pending.attempts++;
+                    batch.put(branch, pending.sequence);
+                }
+            });
+            if (batch.isEmpty()) {
+                return;
+            }
+            queue.inFlight = true;
+        } finally {
+            queue.lock.unlock();
+        }
+
+        log.info("Pushing branches {} of repository {}", batch.keySet(), modelRepository.getName());
+        Map<String, String> rejections = new HashMap<>();
+        String transportError = null;
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "push")) {
+            operation.objects(batch.size());
+            Iterable<PushResult> results = handle.repository().pushBranches(batch.keySet(), modelRepository.getUsername(), modelRepository.getPassword());
+            List<String> failures = new ArrayList<>();
+            for (PushResult result : results) {
+                for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                    RemoteRefUpdate.Status status = update.getStatus();
+                    if (status == RemoteRefUpdate.Status.OK || status == RemoteRefUpdate.Status.UP_TO_DATE) {
+                        continue;
+                    }
+                    String error = update.getSrcRef() + ": " + status + (update.getMessage() == null ? "" : " " + update.getMessage());
+                    if (isRejection(status)) {
+                        rejections.put(branchName(update.getSrcRef()), error);
+                    } else {
+                        failures.add(error);
+                    }
+                    batch.remove(branchName(update.getSrcRef()));
+                }
+            }
+            if (!failures.isEmpty()) {
+                transportError = String.join("; ", failures);
+            } else if (rejections.isEmpty()) {
+                operation.succeeded();
+            }
+        } catch (GitAPIException | RuntimeException e) {
+            log.warn("Push of repository {} failed", modelRepository.getName(), e);
+            transportError = String.valueOf(e.getMessage());
+            batch.clear();
+        }
+
+        queue.lock.lock();
+        try {
+            batch.forEach((branch, sequence) -> {
+                PendingPush pending = queue.pending.get(branch);
+                if (pending != null && pending.sequence == sequence) {
+                    queue.pending.remove(branch);
+                }
+            });
+            for (Map.Entry<String, PendingPush> entry : queue.pending.entrySet()) {
+                PendingPush pending = entry.getValue();
+                String rejection = rejections.get(entry.getKey());
+                if (rejection != null) {
+                    pending.rejected = true;
+                    pending.lastError = rejection;
+                } else if (!pending.rejected) {
+                    pending.lastError = transportError;
+                }
+            }
+            writeJournal(queue);
+            queue.inFlight = false;
+            queue.idle.signalAll();
+            if (!rejections.isEmpty()) {
+                failedPushes.increment();
+                log.warn("Remote rejected branches of repository {}, not retrying them: {}", modelRepository.getName(), rejections.values());
+            }
+            if (transportError != null) {
+                failedPushes.increment();
+                log.warn("Push of repository {} incomplete: {}", modelRepository.getName(), transportError);
+                scheduleDrain(queue, backoff(queue.failures++));
+            } else {
+                queue.failures = 0;
+                if (queue.pending.values().stream().anyMatch(pending -> !pending.rejected)) {
+                    scheduleDrain(queue, coalesceDelay);
+                }
+            }
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the remote refused the update itself, so pushing the same commit again cannot succeed
+     */
+    private static boolean isRejection(RemoteRefUpdate.Status status) {
+        return status == RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD
+                || status == RemoteRefUpdate.Status.REJECTED_NODELETE
+                || status == RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED
+                || status == RemoteRefUpdate.Status.REJECTED_OTHER_REASON;
+    }
+
+    private Duration backoff(int failures) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(failures, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private PushQueue queueOf(ModelRepository modelRepository) {
+        return queues.computeIfAbsent(RepositoryHandleRegistry.keyOf(modelRepository), path -> {
+            PushQueue queue = new PushQueue(modelRepository);
+            Gauge.builder("businessmodeler.repository.push.lag", queue, PushQueue::maxLagSeconds)
+                    .description("Age of the oldest branch update that has not been pushed yet")
+                    .baseUnit("seconds")
+                    .tag("project", String.valueOf(modelRepository.getProjectCode()))
+                    .tag("repository", String.valueOf(modelRepository.getName()))
+                    .register(meterRegistry);
+            Gauge.builder("businessmodeler.repository.push.rejected", queue, PushQueue::rejectedBranches)
+                    .description("Branches the remote rejected, waiting for a new commit")
+                    .tag("project", String.valueOf(modelRepository.getProjectCode()))
+                    .tag("repository", String.valueOf(modelRepository.getName()))
+                    .register(meterRegistry);
+            return queue;
+        });
+    }
+
+    /**
+     * Must be called with the queue lock held. The lock is a {@link ReentrantLock}, so request threads
+     * waiting for it while the journal is written do not pin their carrier thread.
+     */
+    private void writeJournal(PushQueue queue) {
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(queue.modelRepository)) {
+            Path journal = handle.repository().getRepository().getDirectory().toPath().resolve(JOURNAL_FILE);
+            if (queue.pending.isEmpty()) {
+                Files.deleteIfExists(journal);
+                return;
+            }
+            Path temp = journal.resolveSibling(JOURNAL_FILE + ".tmp");
+            Files.write(temp, queue.pending.keySet(), StandardCharsets.UTF_8);
+            Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write push journal of repository {}", queue.modelRepository.getName(), e);
+        }
+    }
+
+    private List<String> readJournal(ModelRepository modelRepository) throws IOException {
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository)) {
+            Path journal = handle.repository().getRepository().getDirectory().toPath().resolve(JOURNAL_FILE);
+            if (!Files.exists(journal)) {
+                return List.of();
+            }
+            return Files.readAllLines(journal, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.isBlank())
+                    .toList();
+        }
+    }
+
+    private static String branchName(String branch) {
+        return branch.replace(RepositoryManager.LOCAL_BRANCH_PREFIX, "");
+    }
+
+    /**
+     * A branch whose latest local update has not reached the remote yet.
+     */
+    public static class PendingPush {
+        private final Instant pendingSince;
+        private long sequence;
+        private int attempts;
+        private String lastError;
+        private boolean rejected;
+
+        private PendingPush(Instant pendingSince) {
+            this.pendingSince = pendingSince;
+        }
+
+        public Instant getPendingSince() {
+            return pendingSince;
+        }
+
+        public Duration getLag() {
+            return Duration.between(pendingSince, Instant.now());
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        /**
+         * @return whether the remote rejected the branch; it is not pushed again until it is committed to
+         */
+        public boolean isRejected() {
+            return rejected;
+        }
+
+        private PendingPush copy() {
+            PendingPush copy = new PendingPush(pendingSince);
+            copy.sequence = sequence;
+            copy.attempts = attempts;
+            copy.lastError = lastError;
+            copy.rejected = rejected;
+            return copy;
+        }
+    }
+
+    private static final class PushQueue {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition idle = lock.newCondition();
+        private final Map<String, PendingPush> pending = new LinkedHashMap<>();
+        private ModelRepository modelRepository;
+        private long sequence;
+        private boolean scheduled;
+        private boolean inFlight;
+        private int failures;
+
+        private PushQueue(ModelRepository modelRepository) {
+            this.modelRepository = modelRepository;
+        }
+
+        private double maxLagSeconds() {
+            lock.lock();
+            try {
+                return pending.values().stream()
+                        .filter(push -> !push.rejected)
+                        .mapToDouble(push -> push.getLag().toMillis() / 1000.0)
+                        .max()
+                        .orElse(0);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double rejectedBranches() {
+            lock.lock();
+            try {
+                return pending.values().stream().filter(push -> push.rejected).count();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reports the configured repositories as {@code repositories} health: out of service while the
+ * startup bootstrap is running, down when a repository could not be cloned or opened, up once every
+ * repository is ready. Included in the readiness group so traffic only arrives on a complete node.
+ */
+@Component
+public class RepositoriesHealthIndicator implements HealthIndicator {
+
+    private final RepositoryBootstrapper repositoryBootstrapper;
+
+    public RepositoriesHealthIndicator(RepositoryBootstrapper repositoryBootstrapper) {
+        this.repositoryBootstrapper = repositoryBootstrapper;
+    }
+
+    @Override
+    public Health health() {
+        List<RepositoryBootstrapper.Status> statuses = repositoryBootstrapper.statuses();
+        Health.Builder builder;
+        if (!repositoryBootstrapper.isComplete()) {
+            builder = Health.outOfService();
+        } else if (statuses.stream().anyMatch(status -> status.state() != RepositoryBootstrapper.State.READY)) {
+            builder = Health.down();
+        } else {
+            builder = Health.up();
+        }
+        for (RepositoryBootstrapper.Status status : statuses) {
+            builder.withDetail(status.projectCode() + "/" + status.name(),
+                    status.error() == null ? status.state() : status.state() + ": " + status.error());
+        }
+        return builder.build();
+    }
+}
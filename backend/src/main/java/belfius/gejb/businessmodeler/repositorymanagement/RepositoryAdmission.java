@@ -0,0 +1,90 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of git operations that run against one repository at the same time.
+ * <p>
+ * Requests are served on virtual threads, so waiting is cheap, but the object database, the pack
+ * files and the remote are not: at most {@code repository.admission.max-concurrent} operations are
+ * admitted per repository. A caller that is not admitted within {@code repository.admission.timeout}
+ * gets a {@link RepositoryBusyException}.
+ */
+@Component
+public class RepositoryAdmission {
+
+    private final ConcurrentMap<Path, Semaphore> permits = new ConcurrentHashMap<>();
+    private final int maxConcurrent;
+    private final Duration timeout;
+    private final Counter rejected;
+
+    public RepositoryAdmission(
+            MeterRegistry meterRegistry,
+            @Value("${repository.admission.max-concurrent:16}") int maxConcurrent,
+            @Value("${repository.admission.timeout:PT10S}") Duration timeout
+    ) {
+        this.maxConcurrent = maxConcurrent;
+        this.timeout = timeout;
+        this.rejected = meterRegistry.counter("businessmodeler.repository.admission.rejected");
+        Gauge.builder("businessmodeler.repository.admission.waiting", permits, RepositoryAdmission::waiting)
+                .description("Git operations waiting for admission across all repositories")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait until an operation on the repository may start.
+     *
+     * @return permit to close when the operation is done
+     * @throws RepositoryBusyException when no permit became available within the configured timeout
+     */
+    public Permit admit(ModelRepository modelRepository) {
+        Semaphore semaphore = permits.computeIfAbsent(RepositoryHandleRegistry.keyOf(modelRepository), path -> new Semaphore(maxConcurrent, true));
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        boolean acquired = false;
+        try {
+            acquired = semaphore.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryBusyException("interrupted while waiting for repository " + modelRepository.getName());
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.lock = "admission";
+                event.repository = modelRepository.getName();
+                event.acquired = acquired;
+                event.commit();
+            }
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new RepositoryBusyException("repository " + modelRepository.getName() + " is busy");
+        }
+        return semaphore::release;
+    }
+
+    private static int waiting(ConcurrentMap<Path, Semaphore> permits) {
+        return permits.values().stream().mapToInt(Semaphore::getQueueLength).sum();
+    }
+
+    /**
+     * An admitted operation. Closing it lets the next waiting operation in.
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
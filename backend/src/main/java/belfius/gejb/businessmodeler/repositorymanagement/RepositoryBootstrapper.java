@@ -0,0 +1,161 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Brings all configured repositories into a usable state at startup.
+ * <p>
+ * Repositories whose path holds no git repository yet are cloned from their remote, existing ones
+ * are opened and verified. Up to {@code repository.bootstrap.threads} repositories are processed at
+ * the same time, so a fresh node does not clone them one after the other. Every repository that
+ * becomes usable keeps its handle open in the {@link RepositoryHandleRegistry} and is announced with
+ * a {@link RepositoryReadyEvent}. The per-repository state backs the {@code repositories} health
+ * indicator, which keeps the readiness probe down until every repository is ready.
+ */
+@Slf4j
+@Component
+public class RepositoryBootstrapper {
+
+    public enum State { PENDING, CLONING, READY, FAILED }
+
+    private final Map<Path, Status> statuses = new ConcurrentHashMap<>();
+    private final RepositoryConfigurationService repositoryConfigurationService;
+    private final RepositoryHandleRegistry repositoryHandleRegistry;
+    private final GitOperationMetrics gitOperationMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor;
+    private final boolean cloneMissing;
+    private volatile CompletableFuture<Void> completion;
+
+    public RepositoryBootstrapper(
+            RepositoryConfigurationService repositoryConfigurationService,
+            RepositoryHandleRegistry repositoryHandleRegistry,
+            GitOperationMetrics gitOperationMetrics,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${repository.bootstrap.threads:8}") int threads,
+            @Value("${repository.bootstrap.clone-missing:true}") boolean cloneMissing
+    ) {
+        this.repositoryConfigurationService = repositoryConfigurationService;
+        this.repositoryHandleRegistry = repositoryHandleRegistry;
+        this.gitOperationMetrics = gitOperationMetrics;
+        this.eventPublisher = eventPublisher;
+        this.executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("git-bootstrap-", 0).daemon().factory());
+        this.cloneMissing = cloneMissing;
+    }
+
+    /**
+     * Clone or open all configured repositories in the background.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void bootstrapConfiguredRepositories() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (ModelRepository modelRepository : repositoryConfigurationService.getRepositories()) {
+            if (statuses.putIfAbsent(RepositoryHandleRegistry.keyOf(modelRepository), status(modelRepository, State.PENDING, null)) != null) {
+                log.warn("Repository {} shares its path with another configured repository, bootstrapping it once", modelRepository.getName());
+                continue;
+            }
+            tasks.add(CompletableFuture.supplyAsync(() -> bootstrap(modelRepository), executor));
+        }
+        completion = CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            long failed = tasks.stream().filter(task -> !task.join()).count();
+            log.info("Bootstrapped {} repositories in {} ms, {} failed", tasks.size(), (System.nanoTime() - start) / 1_000_000, failed);
+        });
+    }
+
+    /**
+     * Clone the repository when it is missing on disk, then open and verify it, on the calling thread.
+     *
+     * @return whether the repository is usable
+     */
+    public boolean bootstrap(ModelRepository modelRepository) {
+        Path key = RepositoryHandleRegistry.keyOf(modelRepository);
+        try {
+            if (!RepositoryHandleRegistry.existsOnDisk(modelRepository) && modelRepository.getRemoteUrl() != null) {
+                if (!cloneMissing) {
+                    throw new IOException("No git repository at " + key + " and cloning is disabled");
+                }
+                statuses.put(key, status(modelRepository, State.CLONING, null));
+                clone(modelRepository);
+            }
+            if (!RepositoryHandleRegistry.existsOnDisk(modelRepository) && modelRepository.getRemoteUrl() == null) {
+                log.info("Creating empty repository {} at {}", modelRepository.getName(), key);
+                JGitRepository.init(modelRepository).close();
+            }
+            try (RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository);
+                 GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "verify")) {
+                handle.repository().verify();
+                operation.succeeded();
+            }
+        } catch (GitAPIException | IOException | RuntimeException e) {
+            log.error("Repository {} is not usable", modelRepository.getName(), e);
+            statuses.put(key, status(modelRepository, State.FAILED, e.getMessage()));
+            return false;
+        }
+        statuses.put(key, status(modelRepository, State.READY, null));
+        eventPublisher.publishEvent(new RepositoryReadyEvent(modelRepository));
+        return true;
+    }
+
+    /**
+     * @return the bootstrap state of every configured repository
+     */
+    public List<Status> statuses() {
+        return List.copyOf(statuses.values());
+    }
+
+    /**
+     * @return whether the startup bootstrap of the configured repositories has finished
+     */
+    public boolean isComplete() {
+        return completion != null && completion.isDone();
+    }
+
+    /**
+     * @return completes once every configured repository was processed, or null before startup
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void clone(ModelRepository modelRepository) throws GitAPIException {
+        log.info("Cloning repository {} from {} into {}", modelRepository.getName(), modelRepository.getRemoteUrl(), modelRepository.getPath());
+        try (GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "clone")) {
+            JGitRepository.cloneRepository(modelRepository);
+            operation.succeeded();
+        }
+    }
+
+    private static Status status(ModelRepository modelRepository, State state, String error) {
+        return new Status(modelRepository.getProjectCode(), modelRepository.getName(), state, error);
+    }
+
+    /**
+     * Bootstrap state of one configured repository; the error is only set for failed repositories.
+     */
+    public record Status(String projectCode, String name, State state, String error) {
+    }
+}
@@ -0,0 +1,11 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+/**
+ * Thrown when a git operation is not admitted to a repository in time.
+ */
+public class RepositoryBusyException extends RuntimeException {
+
+    public RepositoryBusyException(String message) {
+        super(message);
+    }
+}
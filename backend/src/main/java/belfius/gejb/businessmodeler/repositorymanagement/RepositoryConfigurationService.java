@@ -1,34 +1,47 @@
 package belfius.gejb.businessmodeler.repositorymanagement;
 
 import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Binds repository definitions from application properties and exposes lookup by repository name.
+ * <p>
+ * Lookups are served from an immutable, case-folded index that is rebuilt and swapped in one step
+ * whenever the repository list is (re)bound. When several repositories share a key, the first one
+ * configured wins, as with the former linear search.
  *
  * Example configuration:
  * model.repositories[0].name=sample
  * model.repositories[0].path=/repos/sample
  * model.repositories[0].type=git
+ * model.repositories[0].remote-url=https://example.com/sample.git
+ * model.repositories[0].clone-depth=50
+ * model.repositories[0].clone-filter=blob:none
  */
 @Service
 @ConfigurationProperties(prefix = "model")
-public class RepositoryConfigurationService {
+public class RepositoryConfigurationService implements MeterBinder {
 
-    private List<ModelRepository> repositories = new ArrayList<>();
+    private volatile RepositoryIndex index = RepositoryIndex.of(List.of());
+    private final LongAdder lookupHits = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
 
     public List<ModelRepository> getRepositories() {
-        return Collections.unmodifiableList(repositories);
+        return index.repositories();
     }
 
     public void setRepositories(List<ModelRepository> repositories) {
-        this.repositories = repositories == null ? new ArrayList<>() : repositories;
+        this.index = RepositoryIndex.of(repositories == null ? List.of() : repositories);
     }
 
     /**
@@ -38,15 +51,69 @@ public class RepositoryConfigurationService {
      * @return matching repository or empty when not found
      */
     public Optional<ModelRepository> findByName(String repositoryName) {
-        return repositories.stream()
-                .filter(r -> repositoryName != null && repositoryName.equalsIgnoreCase(r.getName()))
-                .findFirst();
+        if (repositoryName == null) {
+            return record(Optional.empty());
+        }
+        return record(Optional.ofNullable(index.byName().get(fold(repositoryName))));
     }
 
     public Optional<ModelRepository> findByProjectCodeAndName(String projectCode, String repositoryName) {
-        return repositories.stream()
-                .filter(r -> repositoryName != null && repositoryName.equalsIgnoreCase(r.getName()))
-                .filter(r -> projectCode != null && projectCode.equalsIgnoreCase(r.getProjectCode()))
-                .findFirst();
+        if (projectCode == null || repositoryName == null) {
+            return record(Optional.empty());
+        }
+        return record(Optional.ofNullable(index.byProjectCodeAndName().get(key(projectCode, repositoryName))));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("businessmodeler.repository.config.lookups", lookupHits, LongAdder::sum)
+                .description("Repository configuration lookups")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("businessmodeler.repository.config.lookups", lookupMisses, LongAdder::sum)
+                .description("Repository configuration lookups")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    private Optional<ModelRepository> record(Optional<ModelRepository> result) {
+        (result.isPresent() ? lookupHits : lookupMisses).increment();
+        return result;
+    }
+
+    private static String key(String projectCode, String repositoryName) {
+        return fold(projectCode) + '\u0000' + fold(repositoryName);
+    }
+
+    /**
+     * Fold case character by character, the same way {@link String#equalsIgnoreCase} compares.
+     */
+    private static String fold(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+        }
+        return folded.toString();
+    }
+
+    private record RepositoryIndex(
+            List<ModelRepository> repositories,
+            Map<String, ModelRepository> byName,
+            Map<String, ModelRepository> byProjectCodeAndName
+    ) {
+        static RepositoryIndex of(List<ModelRepository> repositories) {
+            Map<String, ModelRepository> byName = new HashMap<>();
+            Map<String, ModelRepository> byProjectCodeAndName = new HashMap<>();
+            for (ModelRepository repository : repositories) {
+                if (repository.getName() == null) {
+                    continue;
+                }
+                byName.putIfAbsent(fold(repository.getName()), repository);
+                if (repository.getProjectCode() != null) {
+                    byProjectCodeAndName.putIfAbsent(key(repository.getProjectCode(), repository.getName()), repository);
+                }
+            }
+            return new RepositoryIndex(List.copyOf(repositories), Map.copyOf(byName), Map.copyOf(byProjectCodeAndName));
+        }
     }
 }
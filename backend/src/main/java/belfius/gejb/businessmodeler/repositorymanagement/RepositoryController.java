@@ -3,19 +3,25 @@ package belfius.gejb.businessmodeler.repositorymanagement;
 import belfius.gejb.businessmodeler.model.ModelRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -34,10 +40,18 @@ public class RepositoryController {
      * List branches for the repository identified by {@code projectCode} and {@code repositoryName}.
      * <p>
      * The repositoryName is resolved as a path on the server. The endpoint returns 404 when the
-     * path does not exist and 400 when the path is not a Git repository.
+     * path does not exist and 400 when the path is not a Git repository. Local and remote-tracking
+     * branches are returned separately; both lists are filtered by {@code prefix} and paged
+     * independently by {@code offset} and {@code limit}.
      */
     @GetMapping("/{projectCode}/{repositoryName}/branches")
-    public ResponseEntity<List<String>> listBranches(@PathVariable String projectCode, @PathVariable String repositoryName) {
+    public ResponseEntity<BranchListing> listBranches(
+            @PathVariable String projectCode,
+            @PathVariable String repositoryName,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit
+    ) {
         Optional<ModelRepository> modelRepositoryOpt = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
         if (modelRepositoryOpt.isEmpty()) {
             log.warn("Repository not found for projectCode={} repositoryName={}", projectCode, repositoryName);
@@ -50,8 +64,11 @@ public class RepositoryController {
         }
 
         try {
-            return ResponseEntity.ok(repositoryManager.listBranches(modelRepositoryOpt.get()));
-        } catch (GitAPIException e) {
+            return ResponseEntity.ok(repositoryManager.listBranches(modelRepositoryOpt.get(), prefix, offset, limit == null ? Integer.MAX_VALUE : limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid branch listing request for repository {}", repositoryName, e);
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
             log.error("Failed to list branches for repository {}", repositoryName, e);
             return ResponseEntity.internalServerError().build();
         }
@@ -87,6 +104,9 @@ public class RepositoryController {
         } catch (IllegalArgumentException e) {
             log.warn("Invalid branch creation parameters for repository {}", repositoryName, e);
             return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("IO error while creating branch {} in repository {}", request.getBranchName(), repositoryName, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         } catch (GitAPIException e) {
             log.error("Git error while creating branch {} in repository {}", request.getBranchName(), repositoryName, e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
@@ -94,10 +114,13 @@ public class RepositoryController {
     }
 
     /**
-     * Write a file to a repository and commit it on the specified branch.
+     * Write a file to a repository and commit it on the specified branch. The response is sent once
+     * the local branch moved; the push to the remote follows asynchronously. The body's {@code unchanged}
+     * flag tells whether the branch already held the content, in which case nothing was committed. With
+     * an expected head, a branch that moved in the meantime answers 409 Conflict with its current head.
      */
     @PostMapping(value = "/{projectCode}/{repositoryName}/commit-file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Void> commitFile(
+    public ResponseEntity<Map<String, Boolean>> commitFile(
             @PathVariable String projectCode,
             @PathVariable String repositoryName,
             @ModelAttribute CommitFileRequest request
@@ -112,8 +135,8 @@ public class RepositoryController {
         }
 
         try {
-           repositoryManager.commitFile(request, modelRepository.get());
-            return ResponseEntity.ok().build();
+            boolean committed = repositoryManager.commitFile(request, modelRepository.get());
+            return ResponseEntity.ok(Map.of("unchanged", !committed));
         } catch (IllegalArgumentException e) {
             log.warn("Invalid commit request for repository {}", repositoryName, e);
             return ResponseEntity.badRequest().build();
@@ -126,34 +149,134 @@ public class RepositoryController {
         }
     }
 
+    /**
+     * Write several files to a repository and commit them on the specified branch as a single commit,
+     * reporting {@code unchanged} when the branch already holds all of them. With an expected head, a
+     * branch that moved in the meantime answers 409 Conflict with its current head.
+     */
+    @PostMapping(value = "/{projectCode}/{repositoryName}/commit-files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Boolean>> commitFiles(
+            @PathVariable String projectCode,
+            @PathVariable String repositoryName,
+            @ModelAttribute CommitFilesRequest request
+    ) {
+        Optional<ModelRepository> modelRepository = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
+
+        ResponseEntity error = checkForError(modelRepository.map(ModelRepository::getPath));
+        if (error != null) {
+            return error;
+        }
+
+        try {
+            boolean committed = repositoryManager.commitFiles(request, modelRepository.get());
+            return ResponseEntity.ok(Map.of("unchanged", !committed));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid commit request for repository {}", repositoryName, e);
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            log.error("IO error committing files to repository {}", repositoryName, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } catch (GitAPIException e) {
+            log.error("Git error committing files to repository {}", repositoryName, e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * List the branches of the repository whose commits are still waiting to be pushed, with the
+     * time they have been pending and the last push error, if any.
+     */
+    @GetMapping("/{projectCode}/{repositoryName}/pending-pushes")
+    public ResponseEntity<Map<String, PushScheduler.PendingPush>> pendingPushes(@PathVariable String projectCode, @PathVariable String repositoryName) {
+        Optional<ModelRepository> modelRepositoryOpt = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
+        if (modelRepositoryOpt.isEmpty()) {
+            log.warn("Repository not found for projectCode={} repositoryName={} during pendingPushes", projectCode, repositoryName);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(repositoryManager.pendingPushes(modelRepositoryOpt.get()));
+    }
+
     /**
      * Return a file's content as base64 for the given repository and branch.
+     * <p>
+     * The content is encoded while it is streamed from the object database; prefer
+     * {@code /file/raw} for clients that can handle binary responses. The ETag is derived from the
+     * blob id, so {@code If-None-Match} is answered with 304 without reading the content.
      */
     @GetMapping("/{projectCode}/{repositoryName}/file")
-    public ResponseEntity<String> getFile(
+    public ResponseEntity<StreamingResponseBody> getFile(
             @PathVariable String projectCode,
             @PathVariable String repositoryName,
             @RequestParam("branch") String branch,
-            @RequestParam("fileName") String fileName
+            @RequestParam("fileName") String fileName,
+            WebRequest webRequest
     ) {
-        Optional<ModelRepository> modelRepositoryOpt = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
+        return streamFile(projectCode, repositoryName, branch, fileName, true, webRequest);
+    }
 
+    /**
+     * Stream a file's raw content for the given repository and branch. Conditional requests are
+     * handled like for {@code /file}.
+     */
+    @GetMapping("/{projectCode}/{repositoryName}/file/raw")
+    public ResponseEntity<StreamingResponseBody> getRawFile(
+            @PathVariable String projectCode,
+            @PathVariable String repositoryName,
+            @RequestParam("branch") String branch,
+            @RequestParam("fileName") String fileName,
+            WebRequest webRequest
+    ) {
+        return streamFile(projectCode, repositoryName, branch, fileName, false, webRequest);
+    }
 
+    private ResponseEntity<StreamingResponseBody> streamFile(String projectCode, String repositoryName, String branch, String fileName, boolean base64, WebRequest webRequest) {
+        Optional<ModelRepository> modelRepositoryOpt = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
         if (modelRepositoryOpt.isEmpty()) {
             log.warn("Repository not found for projectCode={} repositoryName={} during getFile", projectCode, repositoryName);
             return ResponseEntity.notFound().build();
         }
+        ModelRepository modelRepository = modelRepositoryOpt.get();
+        RepositoryFile file;
         try {
-            File content = repositoryManager.getFile(fileName, modelRepositoryOpt.get(), branch);
-            String base64 = Base64.getEncoder().encodeToString(Files.readAllBytes(content.toPath()));
-            return ResponseEntity.ok(base64);
+            file = repositoryManager.getFile(fileName, modelRepository, branch);
         } catch (IOException e) {
             log.error("IO error retrieving file {} from repository {}", fileName, repositoryName, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        } catch (GitAPIException e) {
-            log.error("Git error retrieving file {} from repository {}", fileName, repositoryName, e);
-            throw new RuntimeException(e);
         }
+        if (file == null) {
+            log.warn("File {} not found on branch {} in repository {}", fileName, branch, repositoryName);
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = eTagOf(file.blobId());
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                if (base64) {
+                    try (OutputStream encoder = Base64.getEncoder().wrap(StreamUtils.nonClosing(outputStream))) {
+                        repositoryManager.writeFile(file, modelRepository, encoder);
+                    }
+                } else {
+                    repositoryManager.writeFile(file, modelRepository, outputStream);
+                }
+            } catch (IOException e) {
+                log.error("IO error streaming file {} from repository {}", fileName, repositoryName, e);
+                throw e;
+            }
+        };
+        if (base64) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .eTag(eTag)
+                    .body(body);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .eTag(eTag)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline().filename(fileName).build().toString())
+                .body(body);
     }
 
     private ResponseEntity checkForError(Optional<String> repositoryPathOpt) {
@@ -175,28 +298,91 @@ public class RepositoryController {
     }
 
     /**
-     * List files under a repository path for the given branch.
+     * List the files and directories of the given branch, read-only and without a checkout.
+     * <p>
+     * Only the direct entries of {@code path} (default: the repository root) are listed unless
+     * {@code recursive} or {@code depth} is given; {@code offset} and {@code limit} page the result.
+     * The ETag is derived from the branch's tree id, so {@code If-None-Match} is answered with 304
+     * without listing the tree.
      */
     @GetMapping("/{projectCode}/{repositoryName}/files")
     public ResponseEntity<List<String>> listFiles(
             @PathVariable String projectCode,
             @PathVariable String repositoryName,
-            @RequestParam("branch") String branch
+            @RequestParam("branch") String branch,
+            @ModelAttribute ListFilesRequest request,
+            WebRequest webRequest
     ) {
         Optional<ModelRepository> modelRepositoryOpt = repositoryConfigurationService.findByProjectCodeAndName(projectCode, repositoryName);
         if (modelRepositoryOpt.isEmpty()) {
             log.warn("Repository not found for projectCode={} repositoryName={} during listFiles", projectCode, repositoryName);
             return ResponseEntity.notFound().build();
         }
-        modelRepositoryOpt.get().setMainBranch(branch);
 
         try {
-            List<String> files = repositoryManager.listFiles(modelRepositoryOpt.get());
+            ObjectId treeId = repositoryManager.resolveTree(modelRepositoryOpt.get(), branch);
+            if (treeId == null) {
+                log.warn("Branch {} not found in repository {}", branch, repositoryName);
+                return ResponseEntity.notFound().build();
+            }
+            String eTag = eTagOf(treeId);
+            if (webRequest.checkNotModified(eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            List<String> files = repositoryManager.listFiles(modelRepositoryOpt.get(), treeId, request);
+            if (files == null) {
+                log.warn("Path {} not found on branch {} in repository {}", request.getPath(), branch, repositoryName);
+                return ResponseEntity.notFound().build();
+            }
 
-            return ResponseEntity.ok(files);
-        }catch (IOException | GitAPIException e) {
+            return ResponseEntity.ok().eTag(eTag).body(files);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid file listing request for repository {}", repositoryName, e);
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
             log.error("Error listing files for repository {} on branch {}", repositoryName, branch, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    /**
+     * Too many git operations are queued on the repository; the client should retry later.
+     */
+    @ExceptionHandler(RepositoryBusyException.class)
+    public ResponseEntity<Void> repositoryBusy(RepositoryBusyException e) {
+        log.warn("Rejecting request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    /**
+     * The repository is configured but not on disk, e.g. because its clone failed at startup.
+     */
+    @ExceptionHandler(RepositoryMissingException.class)
+    public ResponseEntity<Void> repositoryMissing(RepositoryMissingException e) {
+        log.warn("Repository not available: {}", e.getMessage());
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * The branch is no longer at the head the client based its change on. The current head is returned
+     * as entity tag and in the body, so the client can merge and retry against it.
+     */
+    @ExceptionHandler(CommitConflictException.class)
+    public ResponseEntity<Map<String, String>> commitConflict(CommitConflictException e) {
+        log.info("Rejecting commit: {}", e.getMessage());
+        if (e.getCurrentHead() == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of());
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .eTag(eTagOf(e.getCurrentHead()))
+                .body(Map.of("currentHead", e.getCurrentHead().name()));
+    }
+
+    /**
+     * Git object ids are content hashes, which makes them natural entity tags. They are sent as weak
+     * validators because the container may gzip the representation on the way out.
+     */
+    private static String eTagOf(ObjectId objectId) {
+        return "W/\"" + objectId.name() + "\"";
+    }
 }
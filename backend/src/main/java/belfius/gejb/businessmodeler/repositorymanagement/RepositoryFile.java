@@ -0,0 +1,12 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * A file entry in a commit tree.
+ *
+ * @param path   path of the file relative to the repository root
+ * @param blobId id of the blob holding the file content
+ */
+public record RepositoryFile(String path, ObjectId blobId) {
+}
@@ -0,0 +1,31 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lease on a pooled {@link JGitRepository} handed out by {@link RepositoryHandleRegistry}.
+ * <p>
+ * Closing the lease returns it to the registry; the underlying repository stays open.
+ */
+public class RepositoryHandle implements AutoCloseable {
+
+    private final JGitRepository repository;
+    private final Runnable release;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    RepositoryHandle(JGitRepository repository, Runnable release) {
+        this.repository = repository;
+        this.release = release;
+    }
+
+    public JGitRepository repository() {
+        return repository;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
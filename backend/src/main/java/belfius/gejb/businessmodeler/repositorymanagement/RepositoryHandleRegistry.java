@@ -0,0 +1,132 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps one long-lived {@link JGitRepository} per configured repository and hands out
+ * reference-counted {@link RepositoryHandle leases} on it.
+ * <p>
+ * Handles of the configured repositories are opened at startup by the {@link RepositoryBootstrapper},
+ * and lazily on first use otherwise. A handle that has not been leased for
+ * {@code repository.handle-idle-timeout} is closed by a periodic sweep and reopened on the next lease.
+ */
+@Slf4j
+@Component
+public class RepositoryHandleRegistry {
+
+    private final ConcurrentMap<Path, PooledRepository> handles = new ConcurrentHashMap<>();
+    private final Duration idleTimeout;
+    private final Counter openedHandles;
+    private final Counter evictedHandles;
+
+    public RepositoryHandleRegistry(
+            MeterRegistry meterRegistry,
+            @Value("${repository.handle-idle-timeout:PT30M}") Duration idleTimeout
+    ) {
+        this.idleTimeout = idleTimeout;
+        this.openedHandles = meterRegistry.counter("businessmodeler.repository.handles.opened");
+        this.evictedHandles = meterRegistry.counter("businessmodeler.repository.handles.evicted");
+        Gauge.builder("businessmodeler.repository.handles.open", handles, ConcurrentMap::size)
+                .description("Repository handles currently held open")
+                .register(meterRegistry);
+        Gauge.builder("businessmodeler.repository.handles.leased", handles, RepositoryHandleRegistry::leaseCount)
+                .description("Outstanding leases across all repository handles")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lease the shared handle for the given repository, opening it when needed.
+     * The caller must close the returned lease, preferably with try-with-resources.
+     */
+    public RepositoryHandle acquire(ModelRepository modelRepository) {
+        PooledRepository pooled = handles.compute(keyOf(modelRepository), (path, existing) -> {
+            PooledRepository target = existing != null ? existing : open(modelRepository);
+            target.leases.incrementAndGet();
+            return target;
+        });
+        return new RepositoryHandle(pooled.repository, pooled::release);
+    }
+
+    /**
+     * Close handles that have no outstanding lease and were idle for longer than the configured timeout.
+     */
+    @Scheduled(fixedDelayString = "${repository.handle-eviction-interval:PT1M}")
+    public void evictIdleHandles() {
+        long now = System.nanoTime();
+        for (Path path : handles.keySet()) {
+            handles.computeIfPresent(path, (key, pooled) -> {
+                if (pooled.leases.get() > 0 || now - pooled.lastReleased < idleTimeout.toNanos()) {
+                    return pooled;
+                }
+                log.info("Closing idle repository handle for {}", key);
+                pooled.repository.close();
+                evictedHandles.increment();
+                return null;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        for (Path path : handles.keySet()) {
+            handles.computeIfPresent(path, (key, pooled) -> {
+                pooled.repository.close();
+                return null;
+            });
+        }
+    }
+
+    private PooledRepository open(ModelRepository modelRepository) {
+        log.info("Opening repository handle for {} at {}", modelRepository.getName(), modelRepository.getPath());
+        PooledRepository pooled = new PooledRepository(new JGitRepository(modelRepository));
+        openedHandles.increment();
+        return pooled;
+    }
+
+    /**
+     * @return whether the configured path is an existing directory holding a git repository
+     */
+    static boolean existsOnDisk(ModelRepository modelRepository) {
+        return modelRepository.getPath() != null
+                && Files.isDirectory(Path.of(modelRepository.getPath()))
+                && JGitRepository.isGitRepo(Path.of(modelRepository.getPath()).toFile());
+    }
+
+    static Path keyOf(ModelRepository modelRepository) {
+        return Path.of(modelRepository.getPath()).toAbsolutePath().normalize();
+    }
+
+    private static int leaseCount(ConcurrentMap<Path, PooledRepository> handles) {
+        return handles.values().stream().mapToInt(pooled -> pooled.leases.get()).sum();
+    }
+
+    private static final class PooledRepository {
+        private final JGitRepository repository;
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile long lastReleased = System.nanoTime();
+
+        private PooledRepository(JGitRepository repository) {
+            this.repository = repository;
+        }
+
+        private void release() {
+            lastReleased = System.nanoTime();
+            leases.decrementAndGet();
+        }
+    }
+}
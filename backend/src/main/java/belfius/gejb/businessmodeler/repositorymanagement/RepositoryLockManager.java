@@ -0,0 +1,81 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialises operations that move a branch and cannot use a compare-and-set, such as creating it.
+ * <p>
+ * Branch locks are striped locks keyed by (repository, branch). Commits need no lock, they move the
+ * branch with a compare-and-set instead, and reads from the object database need no lock at all.
+ * Callers take at most one branch lock at a time.
+ */
+@Component
+public class RepositoryLockManager {
+
+    private final ReentrantLock[] branchLocks;
+    private final Timer writeWait;
+
+    public RepositoryLockManager(MeterRegistry meterRegistry, @Value("${repository.lock-stripes:64}") int stripes) {
+        this.branchLocks = new ReentrantLock[stripes];
+        Arrays.setAll(branchLocks, i -> new ReentrantLock());
+        this.writeWait = waitTimer(meterRegistry, "write");
+        Gauge.builder("businessmodeler.repository.lock.queue", branchLocks, locks -> Arrays.stream(locks).mapToInt(ReentrantLock::getQueueLength).sum())
+                .description("Threads waiting for a branch lock")
+                .tag("lock", "branch")
+                .register(meterRegistry);
+    }
+
+    public RepositoryLock lockBranchForWrite(ModelRepository modelRepository, String branch) {
+        return lock(branchLock(modelRepository, branch), writeWait, "write", modelRepository, branch);
+    }
+
+    private ReentrantLock branchLock(ModelRepository modelRepository, String branch) {
+        String branchName = branch == null ? "" : branch.replace(RepositoryManager.LOCAL_BRANCH_PREFIX, "");
+        int hash = Objects.hash(RepositoryHandleRegistry.keyOf(modelRepository), branchName);
+        return branchLocks[Math.floorMod(hash, branchLocks.length)];
+    }
+
+    private static RepositoryLock lock(Lock lock, Timer waitTimer, String mode, ModelRepository modelRepository, String branch) {
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        lock.lock();
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        event.end();
+        if (event.shouldCommit()) {
+            event.lock = mode;
+            event.repository = modelRepository.getName();
+            event.branch = branch;
+            event.acquired = true;
+            event.commit();
+        }
+        return lock::unlock;
+    }
+
+    private static Timer waitTimer(MeterRegistry meterRegistry, String mode) {
+        return Timer.builder("businessmodeler.repository.lock.wait")
+                .description("Time spent waiting to acquire a repository lock")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A held lock; closing it releases the lock.
+     */
+    @FunctionalInterface
+    public interface RepositoryLock extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,14 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class RepositoryManagementWebConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RepositoryRequestEventInterceptor()).addPathPatterns("/repository-management/**");
+    }
+}
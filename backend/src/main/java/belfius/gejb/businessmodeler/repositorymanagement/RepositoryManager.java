@@ -2,17 +2,28 @@ package belfius.gejb.businessmodeler.repositorymanagement;
 
 import belfius.gejb.businessmodeler.model.ModelRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.lib.ObjectChecker;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 @Component
@@ -21,56 +32,191 @@ public class RepositoryManager {
     public static final String LOCAL_BRANCH_PREFIX = "refs/heads/";
     public static final String REMOTE_BRANCH_PREFIX = "refs/remotes/origin/";
 
-    public List<String> listBranches(ModelRepository modelRepository) throws GitAPIException {
+    private static final int COMMIT_ATTEMPTS = 5;
+
+    private final RepositoryHandleRegistry repositoryHandleRegistry;
+    private final TreeFileIndexCache treeFileIndexCache;
+    private final BlobCache blobCache;
+    private final RepositoryLockManager repositoryLockManager;
+    private final PushScheduler pushScheduler;
+    private final BranchSnapshotCache branchSnapshotCache;
+    private final RepositoryAdmission repositoryAdmission;
+    private final GitOperationMetrics gitOperationMetrics;
+    private final SingleFlight<FileLookup, RepositoryFile> fileLookups = new SingleFlight<>();
+    private final SingleFlight<BlobLoad, LoadedBlob> blobLoads = new SingleFlight<>();
+
+    public RepositoryManager(
+            RepositoryHandleRegistry repositoryHandleRegistry,
+            TreeFileIndexCache treeFileIndexCache,
+            BlobCache blobCache,
+            RepositoryLockManager repositoryLockManager,
+            PushScheduler pushScheduler,
+            BranchSnapshotCache branchSnapshotCache,
+            RepositoryAdmission repositoryAdmission,
+            GitOperationMetrics gitOperationMetrics
+    ) {
+        this.repositoryHandleRegistry = repositoryHandleRegistry;
+        this.treeFileIndexCache = treeFileIndexCache;
+        this.blobCache = blobCache;
+        this.repositoryLockManager = repositoryLockManager;
+        this.pushScheduler = pushScheduler;
+        this.branchSnapshotCache = branchSnapshotCache;
+        this.repositoryAdmission = repositoryAdmission;
+        this.gitOperationMetrics = gitOperationMetrics;
+    }
+
+    /**
+     * List one page of the local and remote-tracking branches, served from the cached branch snapshot.
+     *
+     * @param prefix optional prefix of the short branch name
+     */
+    public BranchListing listBranches(ModelRepository modelRepository, String prefix, int offset, int limit) throws IOException {
         log.info("Listing branches for repository {}", modelRepository.getName());
-        JGitRepository jGitRepository = new JGitRepository(modelRepository);
-        return jGitRepository.listLocalBranches();
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "branch.list")) {
+            BranchListing listing = branchSnapshotCache.get(handle.repository()).page(prefix, offset, limit);
+            operation.objects(listing.localTotal() + listing.remoteTotal());
+            operation.succeeded();
+            return listing;
+        }
     }
 
-    public void createBranch(String branchName, String sourceBranch, ModelRepository modelRepository) throws GitAPIException {
+    public void createBranch(String branchName, String sourceBranch, ModelRepository modelRepository) throws IOException, GitAPIException {
 
         if (branchName == null || branchName.isBlank()) {
             throw new IllegalArgumentException("branchName must not be blank");
         }
-        JGitRepository jGitRepository = new JGitRepository(modelRepository);
-        String branchToCheckout = sourceBranch != null && !sourceBranch.isBlank()
-                ? sourceBranch
-                : modelRepository.getMainBranch();
-
-        log.info("Creating branch '{}' in repository {} from {}", branchName, modelRepository.getName(), branchToCheckout);
-        if (branchToCheckout != null && !branchToCheckout.isBlank()) {
-            jGitRepository.checkout(branchToCheckout);
-        }
         branchName = branchName.replace(LOCAL_BRANCH_PREFIX, "");
         branchName = branchName.replace(REMOTE_BRANCH_PREFIX, "");
-        String localBranchName = LOCAL_BRANCH_PREFIX + branchName;
-        String remoteBranchName = REMOTE_BRANCH_PREFIX + branchName;
-        List<String> branchList = listBranches(modelRepository);
-        if(!branchList.contains(localBranchName)) {
-            log.debug("Local branch '{}' does not exist, creating", localBranchName);
-            jGitRepository.createBranch(branchName, false);
-        } else {
-            log.debug("Local branch '{}' already exists, skipping creation", localBranchName);
-        }
-        if(!branchList.contains(remoteBranchName)) {
-            log.debug("Remote branch '{}' does not exist, pushing new branch", remoteBranchName);
-            jGitRepository.pushBranch(branchName, modelRepository.getUsername(), modelRepository.getPassword());
-        } else {
-            log.debug("Remote branch '{}' already exists, skipping push", remoteBranchName);
+        try (RepositoryHandle handle = acquire(modelRepository);
+             RepositoryLockManager.RepositoryLock branchLock = repositoryLockManager.lockBranchForWrite(modelRepository, branchName);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "branch.create")) {
+            operation.branch(branchName);
+            JGitRepository jGitRepository = handle.repository();
+            String startBranch = sourceBranch != null && !sourceBranch.isBlank()
+                    ? sourceBranch
+                    : modelRepository.getMainBranch();
+
+            log.info("Creating branch '{}' in repository {} from {}", branchName, modelRepository.getName(), startBranch);
+            String localBranchName = LOCAL_BRANCH_PREFIX + branchName;
+            String remoteBranchName = REMOTE_BRANCH_PREFIX + branchName;
+            BranchSnapshot branches = branchSnapshotCache.get(jGitRepository);
+            if(!branches.contains(localBranchName)) {
+                log.debug("Local branch '{}' does not exist, creating", localBranchName);
+                ObjectId startPoint = jGitRepository.resolveBranch(startBranch);
+                if (startPoint == null) {
+                    throw new IllegalArgumentException("source branch " + startBranch + " does not exist");
+                }
+                jGitRepository.createBranch(branchName, startPoint);
+                forgetLookups(modelRepository);
+            } else {
+                log.debug("Local branch '{}' already exists, skipping creation", localBranchName);
+            }
+            if(!branches.contains(remoteBranchName)) {
+                log.debug("Remote branch '{}' does not exist, scheduling push of new branch", remoteBranchName);
+                pushScheduler.schedulePush(modelRepository, branchName);
+            } else {
+                log.debug("Remote branch '{}' already exists, skipping push", remoteBranchName);
+            }
+            operation.succeeded();
         }
         log.info("Branch '{}' processed for repository {}", branchName, modelRepository.getName());
     }
 
-    public File getFile(String fileName, ModelRepository modelRepository, String branch) throws IOException, GitAPIException {
+    /**
+     * Locate a file on the tip of the given branch straight from the object database, without
+     * checking the branch out. Identical lookups arriving while one is in flight share its result.
+     *
+     * @return the file or null when the branch or the file does not exist
+     */
+    public RepositoryFile getFile(String fileName, ModelRepository modelRepository, String branch) throws IOException {
         log.info("Retrieving file '{}' from branch '{}' in repository {}", fileName, branch, modelRepository.getName());
-        JGitRepository jGitRepository = new JGitRepository(modelRepository);
-        if (!branch.equals(modelRepository.getMainBranch())) {
-            jGitRepository.checkout(branch);
+        return fileLookups.execute(
+                new FileLookup(RepositoryHandleRegistry.keyOf(modelRepository), branch, fileName),
+                () -> lookupFile(fileName, modelRepository, branch),
+                () -> gitOperationMetrics.coalesced(modelRepository, "file.lookup")
+        );
+    }
+
+    private RepositoryFile lookupFile(String fileName, ModelRepository modelRepository, String branch) throws IOException {
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "file.lookup")) {
+            operation.branch(branch);
+            JGitRepository jGitRepository = handle.repository();
+            ObjectId commitId = jGitRepository.resolveBranch(branch);
+            RepositoryFile file = null;
+            if (commitId == null) {
+                log.debug("Branch '{}' not found in repository {}", branch, modelRepository.getName());
+            } else {
+                file = fileIndex(modelRepository, jGitRepository, commitId).findByName(fileName);
+            }
+            operation.succeeded();
+            return file;
+        }
+    }
+
+    /**
+     * Write a blob to the given output stream. Blobs the {@link BlobCache} accepts are served from and
+     * added to it, larger ones are streamed without materialising them on the heap. Concurrent misses
+     * for the same blob share one load. The output stream is not closed.
+     */
+    public void writeFile(RepositoryFile file, ModelRepository modelRepository, OutputStream outputStream) throws IOException {
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "file.read")) {
+            BlobCache.CachedBlob cached = blobCache.get(file.blobId());
+            LoadedBlob blob = cached != null
+                    ? new LoadedBlob(cached, null)
+                    : blobLoads.execute(new BlobLoad(RepositoryHandleRegistry.keyOf(modelRepository), file.blobId().copy()),
+                            () -> loadBlob(handle.repository(), file.blobId()),
+                            () -> gitOperationMetrics.coalesced(modelRepository, "blob.load"));
+            blob.writeTo(outputStream);
+            operation.objects(1);
+            operation.bytes(blob.size());
+            operation.succeeded();
+        }
+    }
+
+    /**
+     * Open a blob and cache it when the cache accepts its size. The loader of a blob too large for the
+     * cache is handed out as it is, so the blob is streamed without opening it a second time.
+     */
+    private LoadedBlob loadBlob(JGitRepository jGitRepository, ObjectId blobId) throws IOException {
+        BlobCache.CachedBlob cached = blobCache.get(blobId);
+        if (cached != null) {
+            return new LoadedBlob(cached, null);
+        }
+        ObjectLoader loader = jGitRepository.openBlob(blobId);
+        if (!blobCache.accepts(loader.getSize())) {
+            return new LoadedBlob(null, loader);
         }
-        return jGitRepository.findFileByName(fileName);
+        return new LoadedBlob(blobCache.put(blobId, loader), null);
     }
 
-    public void commitFile(CommitFileRequest commitFileRequest, ModelRepository modelRepository) throws IOException, GitAPIException {
+    private TreeFileIndex fileIndex(ModelRepository modelRepository, JGitRepository jGitRepository, ObjectId commitId) throws IOException {
+        ObjectId treeId = jGitRepository.resolveTree(commitId);
+        TreeFileIndex index = treeFileIndexCache.get(treeId);
+        if (index == null) {
+            try (GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "tree.index")) {
+                index = jGitRepository.indexFiles(treeId);
+                operation.objects(index.size());
+                operation.succeeded();
+            }
+            treeFileIndexCache.put(index);
+        }
+        return index;
+    }
+
+    /**
+     * Commit a single file on the given branch. The commit is built directly in the object database;
+     * the working tree and the index are not touched. The upload is streamed into the object database
+     * and hashed on the way, so it is never held on the heap as a whole. The push to the remote happens
+     * asynchronously. When the branch already holds the same content at the path, nothing is written
+     * and nothing is pushed.
+     *
+     * @return whether a commit was made
+     * @throws CommitConflictException when the branch is not at the expected head of the request
+     */
+    public boolean commitFile(CommitFileRequest commitFileRequest, ModelRepository modelRepository) throws IOException, GitAPIException {
         if (commitFileRequest.getFile() == null || commitFileRequest.getFile().isEmpty()) {
             throw new IllegalArgumentException("file must not be empty");
         }
@@ -78,46 +224,297 @@ public class RepositoryManager {
         if (originalFileName == null || originalFileName.isBlank()) {
             throw new IllegalArgumentException("file name must not be blank");
         }
+        if (commitFileRequest.getCommitMessage() == null) {
+            throw new IllegalArgumentException("commitMessage must not be null");
+        }
+        String filePath = repositoryPath(originalFileName);
         String branch = StringUtils.isEmpty(commitFileRequest.getBranch()) ? modelRepository.getMainBranch() : commitFileRequest.getBranch();
-        log.info("Committing file '{}' to branch '{}' in repository {}", originalFileName, branch, modelRepository.getName());
-        JGitRepository jGitRepository = new JGitRepository(modelRepository);
-        jGitRepository.checkout(branch);
-        Path repositoryPath = Path.of(modelRepository.getPath());
-        Path targetFile = repositoryPath.resolve(originalFileName).normalize();
-        if (!targetFile.startsWith(repositoryPath)) {
-            throw new IllegalArgumentException("file path must stay within repository");
+        ObjectId expectedHead = expectedHead(commitFileRequest.getExpectedHead());
+        log.info("Committing file '{}' to branch '{}' in repository {}", filePath, branch, modelRepository.getName());
+        int committedFiles = commit(
+                modelRepository,
+                branch,
+                expectedHead,
+                Map.of(filePath, commitFileRequest.getFile()),
+                commitFileRequest.getCommitMessage(),
+                author(commitFileRequest.getAuthorName(), commitFileRequest.getAuthorEmail(), modelRepository)
+        );
+        if (committedFiles == 0) {
+            log.info("File '{}' on branch '{}' in repository {} is unchanged, nothing to commit", filePath, branch, modelRepository.getName());
+            return false;
         }
-        Files.createDirectories(targetFile.getParent());
-        Files.write(
-                targetFile,
-                commitFileRequest.getFile().getBytes(),
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
+        log.info("File '{}' committed to branch '{}' in repository {}", filePath, branch, modelRepository.getName());
+        return true;
+    }
+
+    /**
+     * Commit several files on the given branch as one commit, followed by a single push.
+     * Each part is streamed into the object database, so no part is held on the heap as a whole. Parts
+     * whose content the branch already holds are left out; when no part changed, nothing is written
+     * and nothing is pushed.
+     *
+     * @return whether a commit was made
+     * @throws CommitConflictException when the branch is not at the expected head of the request
+     */
+    public boolean commitFiles(CommitFilesRequest commitFilesRequest, ModelRepository modelRepository) throws IOException, GitAPIException {
+        List<MultipartFile> files = commitFilesRequest.getFiles();
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("files must not be empty");
+        }
+        if (commitFilesRequest.getCommitMessage() == null) {
+            throw new IllegalArgumentException("commitMessage must not be null");
+        }
+        Map<String, MultipartFile> filesByPath = new LinkedHashMap<>();
+        for (MultipartFile file : files) {
+            if (file.getOriginalFilename() == null || file.getOriginalFilename().isBlank()) {
+                throw new IllegalArgumentException("file name must not be blank");
+            }
+            if (filesByPath.put(repositoryPath(file.getOriginalFilename()), file) != null) {
+                throw new IllegalArgumentException("file " + file.getOriginalFilename() + " is included more than once");
+            }
+        }
+        String branch = StringUtils.isEmpty(commitFilesRequest.getBranch()) ? modelRepository.getMainBranch() : commitFilesRequest.getBranch();
+        ObjectId expectedHead = expectedHead(commitFilesRequest.getExpectedHead());
+        log.info("Committing {} files to branch '{}' in repository {}", filesByPath.size(), branch, modelRepository.getName());
+        int committedFiles = commit(
+                modelRepository,
+                branch,
+                expectedHead,
+                filesByPath,
+                commitFilesRequest.getCommitMessage(),
+                author(commitFilesRequest.getAuthorName(), commitFilesRequest.getAuthorEmail(), modelRepository)
         );
+        if (committedFiles == 0) {
+            log.info("Files on branch '{}' in repository {} are unchanged, nothing to commit", branch, modelRepository.getName());
+            return false;
+        }
+        log.info("{} files committed to branch '{}' in repository {}", committedFiles, branch, modelRepository.getName());
+        return true;
+    }
 
-        jGitRepository.addAll();
-        String authorName = commitFileRequest.getAuthorName() == null ? modelRepository.getDefaultCommitUser() : commitFileRequest.getAuthorName();
-        String authorEmail = commitFileRequest.getAuthorEmail() == null ? "" : commitFileRequest.getAuthorEmail();
-        jGitRepository.commit(
-                commitFileRequest.getCommitMessage(),
-                authorName,
-                authorEmail
+    /**
+     * Commit the files whose content differs from the branch tip and schedule a push.
+     * <p>
+     * Uploads are hashed first and only the changed ones are inserted, so a save that changes nothing
+     * writes nothing to the object database. Uploads are spooled by the multipart resolver, so reading
+     * a changed one a second time is cheap.
+     * <p>
+     * No lock is held: the branch is moved with a compare-and-set against the tip the commit was built
+     * on. With an expected head, the branch must be at that commit, otherwise a
+     * {@link CommitConflictException} is thrown. Without one, a commit that lost the race to a
+     * concurrent writer is rebuilt on the new tip, up to {@value #COMMIT_ATTEMPTS} times.
+     *
+     * @return number of files committed, 0 when all of them were unchanged
+     */
+    private int commit(ModelRepository modelRepository, String branch, ObjectId expectedHead, Map<String, MultipartFile> filesByPath,
+                       String message, PersonIdent author) throws IOException, GitAPIException {
+        Map<String, ObjectId> contentIds = new LinkedHashMap<>();
+        for (Map.Entry<String, MultipartFile> file : filesByPath.entrySet()) {
+            contentIds.put(file.getKey(), contentId(file.getValue()));
+        }
+        Map<String, ObjectId> changes = new LinkedHashMap<>();
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "commit")) {
+            operation.branch(branch);
+            JGitRepository jGitRepository = handle.repository();
+            Set<ObjectId> inserted = new HashSet<>();
+            for (int attempt = 1; ; attempt++) {
+                ObjectId head = jGitRepository.resolveBranch(branch);
+                if (expectedHead != null && !expectedHead.equals(head)) {
+                    throw new CommitConflictException("branch " + branch + " is not at " + expectedHead.name(), head);
+                }
+                changes.clear();
+                for (Map.Entry<String, ObjectId> content : contentIds.entrySet()) {
+                    if (head == null || !content.getValue().equals(jGitRepository.blobAt(head, content.getKey()))) {
+                        changes.put(content.getKey(), content.getValue());
+                    }
+                }
+                if (changes.isEmpty()) {
+                    operation.succeeded();
+                    return 0;
+                }
+                for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                    if (inserted.add(change.getValue())) {
+                        MultipartFile file = filesByPath.get(change.getKey());
+                        try (InputStream content = file.getInputStream()) {
+                            jGitRepository.insertBlob(content, file.getSize());
+                        }
+                        operation.objects(1);
+                        operation.bytes(file.getSize());
+                    }
+                }
+                try {
+                    jGitRepository.commitFiles(branch, changes, message, author, head);
+                    break;
+                } catch (ConcurrentRefUpdateException e) {
+                    ObjectId currentHead = jGitRepository.resolveBranch(branch);
+                    if (expectedHead != null || attempt == COMMIT_ATTEMPTS) {
+                        throw new CommitConflictException("branch " + branch + " moved while committing", currentHead);
+                    }
+                    log.debug("Branch '{}' in repository {} moved while committing, retrying on {}", branch, modelRepository.getName(), currentHead);
+                }
+            }
+            forgetLookups(modelRepository);
+            operation.succeeded();
+        }
+        pushScheduler.schedulePush(modelRepository, branch);
+        return changes.size();
+    }
+
+    /**
+     * Parse the head a client expects the branch to be at.
+     *
+     * @return the commit id or null when the client did not send one
+     */
+    private static ObjectId expectedHead(String expectedHead) {
+        if (!StringUtils.hasText(expectedHead)) {
+            return null;
+        }
+        if (!ObjectId.isId(expectedHead)) {
+            throw new IllegalArgumentException("expectedHead must be a full commit id");
+        }
+        return ObjectId.fromString(expectedHead);
+    }
+
+    /**
+     * Hash an upload the way git would store it, so it can be compared with the branch before anything is written.
+     */
+    private static ObjectId contentId(MultipartFile file) throws IOException {
+        try (InputStream content = file.getInputStream()) {
+            return JGitRepository.blobIdFor(content, file.getSize());
+        }
+    }
+
+    /**
+     * Make lookups that start after a branch of the repository moved read the new tip rather than join
+     * a lookup of the old one.
+     */
+    private void forgetLookups(ModelRepository modelRepository) {
+        Path repositoryKey = RepositoryHandleRegistry.keyOf(modelRepository);
+        fileLookups.forget(lookup -> lookup.repository().equals(repositoryKey));
+    }
+
+    private static PersonIdent author(String authorName, String authorEmail, ModelRepository modelRepository) {
+        return new PersonIdent(
+                authorName == null ? modelRepository.getDefaultCommitUser() : authorName,
+                authorEmail == null ? "" : authorEmail
         );
-        jGitRepository.pushBranch(branch, modelRepository.getUsername(), modelRepository.getPassword());
-        log.info("File '{}' committed to branch '{}' in repository {}", originalFileName, branch, modelRepository.getName());
     }
 
-    public List<String> listFiles(ModelRepository modelRepository) throws IOException, GitAPIException {
-        log.info("Listing files for repository {} on branch {}", modelRepository.getName(), modelRepository.getMainBranch());
-        JGitRepository jGitRepository = new JGitRepository(modelRepository);
-        if(!modelRepository.getMainBranch().equals(jGitRepository.getRepository().getBranch())) {
-            jGitRepository.checkout(modelRepository.getMainBranch());
+    /**
+     * Lease the repository handle once the operation has been admitted; closing the lease also
+     * returns the admission permit.
+     */
+    private RepositoryHandle acquire(ModelRepository modelRepository) {
+        RepositoryAdmission.Permit permit = repositoryAdmission.admit(modelRepository);
+        try {
+            RepositoryHandle handle = repositoryHandleRegistry.acquire(modelRepository);
+            return new RepositoryHandle(handle.repository(), () -> {
+                handle.close();
+                permit.close();
+            });
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
         }
-        Path repositoryPath = Path.of(modelRepository.getPath());
-        List<String> files = Files.list(repositoryPath)
-                .map(path -> repositoryPath.relativize(path).toString())
-                .collect(Collectors.toList());
-        return files;
     }
 
+    /**
+     * Normalise a client supplied file name into a "/" separated path relative to the repository root.
+     * Every component must be a name git accepts in a tree on any platform, so empty names, {@code .git}
+     * in any letter case and names that alias it on Windows or macOS are rejected.
+     */
+    private static String repositoryPath(String fileName) {
+        Path path = Path.of(fileName.replace('\\', '/')).normalize();
+        if (path.isAbsolute() || path.startsWith("..")) {
+            throw new IllegalArgumentException("file path must stay within repository");
+        }
+        String repositoryPath = StreamSupport.stream(path.spliterator(), false)
+                .map(Path::toString)
+                .collect(Collectors.joining("/"));
+        try {
+            new ObjectChecker().setSafeForWindows(true).setSafeForMacOS(true).checkPath(repositoryPath);
+        } catch (CorruptObjectException e) {
+            throw new IllegalArgumentException("file path " + fileName + " is not a valid repository path: " + e.getMessage());
+        }
+        return repositoryPath;
+    }
+
+    /**
+     * @return branches whose latest commits have not been pushed yet, by branch name
+     */
+    public Map<String, PushScheduler.PendingPush> pendingPushes(ModelRepository modelRepository) {
+        return pushScheduler.pendingPushes(modelRepository);
+    }
+
+    /**
+     * Resolve the root tree of the given branch.
+     *
+     * @return tree id or null when the branch does not exist
+     */
+    public ObjectId resolveTree(ModelRepository modelRepository, String branch) throws IOException {
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "tree.resolve")) {
+            operation.branch(branch);
+            JGitRepository jGitRepository = handle.repository();
+            ObjectId commitId = jGitRepository.resolveBranch(branch);
+            ObjectId treeId = commitId == null ? null : jGitRepository.resolveTree(commitId);
+            operation.succeeded();
+            return treeId;
+        }
+    }
+
+    /**
+     * List the entries of a tree, typically one returned by {@link #resolveTree}. The tree is read
+     * straight from the object database, so listings never depend on or change the working tree.
+     *
+     * @return paths relative to the repository root, or null when the requested directory does not exist
+     */
+    public List<String> listFiles(ModelRepository modelRepository, ObjectId treeId, ListFilesRequest listFilesRequest) throws IOException {
+        if (listFilesRequest.getOffset() < 0 || listFilesRequest.getLimit() < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        if (listFilesRequest.getDepth() != null && listFilesRequest.getDepth() < 1) {
+            throw new IllegalArgumentException("depth must be at least 1");
+        }
+        String directory = StringUtils.hasText(listFilesRequest.getPath()) ? repositoryPath(listFilesRequest.getPath()) : "";
+        int maxDepth = listFilesRequest.getDepth() != null
+                ? listFilesRequest.getDepth()
+                : listFilesRequest.isRecursive() ? Integer.MAX_VALUE : 1;
+        log.info("Listing files under '{}' for repository {} in tree {}", directory, modelRepository.getName(), treeId.name());
+        try (RepositoryHandle handle = acquire(modelRepository);
+             GitOperationMetrics.Operation operation = gitOperationMetrics.start(modelRepository, "tree.list")) {
+            List<String> entries = handle.repository().listEntries(treeId, directory, maxDepth, listFilesRequest.getOffset(), listFilesRequest.getLimit());
+            operation.objects(entries == null ? 0 : entries.size());
+            operation.succeeded();
+            return entries;
+        }
+    }
+
+    private record FileLookup(Path repository, String branch, String fileName) {
+    }
+
+    /**
+     * Keyed by repository too, since a loader reads from the object database of its repository.
+     */
+    private record BlobLoad(Path repository, ObjectId blobId) {
+    }
+
+    /**
+     * A blob ready to be written: either its cached content or the open loader of a blob too large for the cache.
+     */
+    private record LoadedBlob(BlobCache.CachedBlob cached, ObjectLoader loader) {
+
+        long size() {
+            return cached != null ? cached.size() : loader.getSize();
+        }
+
+        void writeTo(OutputStream outputStream) throws IOException {
+            if (cached != null) {
+                cached.writeTo(outputStream);
+            } else {
+                loader.copyTo(outputStream);
+            }
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+/**
+ * Thrown when a configured repository is not present on disk, e.g. because its clone failed.
+ */
+public class RepositoryMissingException extends RuntimeException {
+
+    public RepositoryMissingException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+
+/**
+ * Published once a configured repository was cloned or opened at startup and verified to be usable.
+ */
+public record RepositoryReadyEvent(ModelRepository modelRepository) {
+}
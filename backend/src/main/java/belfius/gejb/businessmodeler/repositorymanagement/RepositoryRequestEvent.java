@@ -0,0 +1,36 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one repository management request, including streamed responses.
+ */
+@Name("belfius.businessmodeler.RepositoryRequest")
+@Label("Repository Request")
+@Category({"Business Modeler", "HTTP"})
+@Description("A request to the repository management endpoints")
+@StackTrace(false)
+final class RepositoryRequestEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Project")
+    String project;
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Branch")
+    String branch;
+
+    @Label("Status")
+    int status;
+}
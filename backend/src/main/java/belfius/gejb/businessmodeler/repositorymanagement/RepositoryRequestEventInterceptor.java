@@ -0,0 +1,51 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Emits a {@link RepositoryRequestEvent} per repository management request.
+ * <p>
+ * The event is started on the first dispatch and committed when the request completes, so for
+ * streamed downloads it also covers the asynchronous dispatch that writes the body.
+ */
+public class RepositoryRequestEventInterceptor implements HandlerInterceptor {
+
+    private static final String EVENT_ATTRIBUTE = RepositoryRequestEventInterceptor.class.getName() + ".event";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(EVENT_ATTRIBUTE) == null) {
+            RepositoryRequestEvent event = new RepositoryRequestEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                request.setAttribute(EVENT_ATTRIBUTE, event);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(EVENT_ATTRIBUTE) instanceof RepositoryRequestEvent event)) {
+            return;
+        }
+        request.removeAttribute(EVENT_ATTRIBUTE);
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = request.getMethod();
+            event.endpoint = String.valueOf(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+            if (request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE) instanceof Map<?, ?> variables) {
+                event.project = (String) variables.get("projectCode");
+                event.repository = (String) variables.get("repositoryName");
+            }
+            event.branch = request.getParameter("branch");
+            event.status = response.getStatus();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Lets concurrent callers asking for the same key share one execution of the load.
+ * <p>
+ * The first caller runs the load on its own thread; callers arriving while it is in flight wait for
+ * and receive the same result or exception. Nothing is cached: once the load completed, the next call
+ * for the key runs a new load.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Run the load for the key, or wait for the one already in flight.
+     *
+     * @param onShared called when the result of a load already in flight is used
+     */
+    public V execute(K key, Load<V> load, Runnable onShared) throws IOException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            onShared.run();
+            return await(existing);
+        }
+        try {
+            V value = load.load();
+            flight.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Let later callers for the matching keys start a new load instead of joining the one in flight,
+     * e.g. because the data it reads has just changed. Callers already waiting still get its result.
+     */
+    public void forget(Predicate<? super K> keys) {
+        inFlight.keySet().removeIf(keys);
+    }
+
+    /**
+     * @return number of loads currently in flight
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shared load");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw new IOException(ioException.getMessage(), ioException);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Load<V> {
+        V load() throws IOException;
+    }
+}
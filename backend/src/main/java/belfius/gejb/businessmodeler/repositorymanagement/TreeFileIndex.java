@@ -0,0 +1,38 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Map;
+
+/**
+ * Immutable file name to file lookup for a single git tree.
+ * <p>
+ * Tree ids identify their content, so an index built for a tree id never goes stale. When several
+ * files share a name, the first one in tree order wins.
+ */
+public class TreeFileIndex {
+
+    private final ObjectId treeId;
+    private final Map<String, RepositoryFile> filesByName;
+
+    TreeFileIndex(ObjectId treeId, Map<String, RepositoryFile> filesByName) {
+        this.treeId = treeId;
+        this.filesByName = Map.copyOf(filesByName);
+    }
+
+    public ObjectId getTreeId() {
+        return treeId;
+    }
+
+    /**
+     * @param fileName file name to look for (no path required)
+     * @return matching file or null when the tree holds no file with that name
+     */
+    public RepositoryFile findByName(String fileName) {
+        return filesByName.get(fileName);
+    }
+
+    public int size() {
+        return filesByName.size();
+    }
+}
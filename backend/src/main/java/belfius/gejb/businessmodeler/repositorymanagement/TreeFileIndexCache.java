@@ -0,0 +1,40 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link TreeFileIndex} instances keyed by tree id.
+ * <p>
+ * Entries never need invalidation because a tree id always denotes the same content; the cache is
+ * only bounded by {@code repository.file-index-cache-size}.
+ */
+@Component
+public class TreeFileIndexCache {
+
+    private final Map<ObjectId, TreeFileIndex> indexes;
+
+    public TreeFileIndexCache(@Value("${repository.file-index-cache-size:256}") int maxEntries) {
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, TreeFileIndex> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return cached index for the tree or null when it has not been built yet
+     */
+    public synchronized TreeFileIndex get(ObjectId treeId) {
+        return indexes.get(treeId);
+    }
+
+    public synchronized void put(TreeFileIndex index) {
+        indexes.put(index.getTreeId(), index);
+    }
+}
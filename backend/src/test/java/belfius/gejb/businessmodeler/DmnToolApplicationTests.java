@@ -3,7 +3,7 @@ package belfius.gejb.businessmodeler;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "repository.bootstrap.clone-missing=false")
 class DmnToolApplicationTests {
 
     @Test
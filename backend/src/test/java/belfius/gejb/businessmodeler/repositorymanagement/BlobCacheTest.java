@@ -0,0 +1,83 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void get_returnsCachedContentAndRecordsHitsAndMisses() throws Exception {
+        BlobCache cache = new BlobCache(meterRegistry, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false);
+        byte[] content = "<definitions/>".getBytes(StandardCharsets.UTF_8);
+        ObjectId blobId = blobId(content);
+
+        assertThat(cache.get(blobId)).isNull();
+        cache.put(blobId, content);
+
+        assertThat(read(cache.get(blobId))).isEqualTo("<definitions/>");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "blob").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "blob").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void put_keepsContentOffHeapWhenConfigured() throws Exception {
+        BlobCache cache = new BlobCache(meterRegistry, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), true);
+        byte[] content = "x".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        ObjectId blobId = blobId(content);
+
+        cache.put(blobId, content);
+
+        BlobCache.CachedBlob blob = cache.get(blobId);
+        assertThat(blob.size()).isEqualTo(20_000);
+        assertThat(read(blob)).isEqualTo("x".repeat(20_000));
+        assertThat(read(blob)).as("reads do not consume the buffer").hasSize(20_000);
+    }
+
+    @Test
+    void put_copiesLoaderStreamOffHeapWithoutHeapCopy() throws Exception {
+        BlobCache cache = new BlobCache(meterRegistry, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), true);
+        byte[] content = "y".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        ObjectId blobId = blobId(content);
+        ObjectLoader loader = new ObjectLoader.SmallObject(Constants.OBJ_BLOB, content) {
+            @Override
+            public byte[] getCachedBytes() {
+                throw new AssertionError("blob must be copied from its stream");
+            }
+        };
+
+        BlobCache.CachedBlob blob = cache.put(blobId, loader);
+
+        assertThat(blob.size()).isEqualTo(20_000);
+        assertThat(read(cache.get(blobId))).isEqualTo("y".repeat(20_000));
+    }
+
+    @Test
+    void accepts_rejectsBlobsAboveTheSizeLimit() {
+        BlobCache cache = new BlobCache(meterRegistry, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false);
+
+        assertThat(cache.accepts(DataSize.ofKilobytes(64).toBytes())).isTrue();
+        assertThat(cache.accepts(DataSize.ofKilobytes(64).toBytes() + 1)).isFalse();
+    }
+
+    private static ObjectId blobId(byte[] content) {
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, content);
+    }
+
+    private static String read(BlobCache.CachedBlob blob) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        blob.writeTo(content);
+        return content.toString(StandardCharsets.UTF_8);
+    }
+}
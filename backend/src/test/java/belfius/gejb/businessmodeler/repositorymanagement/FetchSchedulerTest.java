@@ -0,0 +1,88 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BranchSnapshotCache branchSnapshotCache = new BranchSnapshotCache();
+    private RepositoryHandleRegistry repositoryHandleRegistry;
+    private FetchScheduler fetchScheduler;
+    private ModelRepository repo;
+    private Path remote;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        remote = Files.createTempDirectory("remote");
+        Git.init().setBare(true).setDirectory(remote.toFile()).setInitialBranch("main").call().close();
+        Path local = Files.createTempDirectory("repo");
+        try (Git git = Git.init().setDirectory(local.toFile()).setInitialBranch("main").call()) {
+            Files.writeString(local.resolve("readme.md"), "models");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").setAuthor("test", "test@test.com").call();
+            git.remoteAdd().setName("origin").setUri(new URIish(remote.toUri().toString())).call();
+            git.push().setRemote("origin").add("main").call();
+        }
+
+        repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(local.toString());
+        repo.setMainBranch("main");
+
+        repositoryHandleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofMinutes(30));
+        fetchScheduler = new FetchScheduler(repositoryHandleRegistry, branchSnapshotCache,
+                new GitOperationMetrics(meterRegistry), meterRegistry, 1, Duration.ofHours(1), Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fetchScheduler.shutdown();
+        repositoryHandleRegistry.closeAll();
+        branchSnapshotCache.close();
+    }
+
+    @Test
+    void fetch_updatesRemoteTrackingBranches() throws Exception {
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+            assertThat(branchSnapshotCache.get(handle.repository()).contains("refs/remotes/origin/feature/remote")).isFalse();
+        }
+        Path other = Files.createTempDirectory("other");
+        try (Git git = Git.cloneRepository().setURI(remote.toUri().toString()).setDirectory(other.toFile()).call()) {
+            git.branchCreate().setName("feature/remote").call();
+            git.push().setRemote("origin").add("feature/remote").call();
+        }
+
+        assertThat(fetchScheduler.fetch(repo)).isTrue();
+
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+            assertThat(branchSnapshotCache.get(handle.repository()).contains("refs/remotes/origin/feature/remote")).isTrue();
+        }
+        assertThat(fetchScheduler.staleness(repo)).isLessThan(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void fetch_reportsFailureAndKeepsRepositoryStale() throws Exception {
+        try (Git git = Git.open(Path.of(repo.getPath()).toFile())) {
+            git.remoteSetUrl().setRemoteName("origin").setRemoteUri(new URIish(remote.resolve("missing").toUri().toString())).call();
+        }
+
+        assertThat(fetchScheduler.fetch(repo)).isFalse();
+
+        assertThat(fetchScheduler.staleness(repo)).isNull();
+        assertThat(meterRegistry.get("businessmodeler.repository.fetch.staleness").gauge().value()).isGreaterThanOrEqualTo(0);
+        assertThat(meterRegistry.get("businessmodeler.git.operation.errors").tag("operation", "fetch").counter().count()).isEqualTo(1);
+    }
+}
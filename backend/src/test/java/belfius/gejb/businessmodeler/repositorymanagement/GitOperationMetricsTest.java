@@ -0,0 +1,63 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitOperationMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GitOperationMetrics metrics = new GitOperationMetrics(meterRegistry);
+
+    @Test
+    void close_recordsMetersAndFlightRecorderEvent() throws Exception {
+        Path dump = Files.createTempFile("git-operations", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("belfius.businessmodeler.GitOperation");
+            recording.start();
+
+            try (GitOperationMetrics.Operation operation = metrics.start(repo(), "commit")) {
+                operation.branch("main");
+                operation.objects(2);
+                operation.bytes(42);
+                operation.succeeded();
+            }
+            try (GitOperationMetrics.Operation ignored = metrics.start(repo(), "push")) {
+                // fails by not calling succeeded()
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "commit").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.git.operation.bytes").tag("project", "project").tag("repository", "repo").summary().totalAmount()).isEqualTo(42);
+        assertThat(meterRegistry.get("businessmodeler.git.operation.errors").tag("operation", "push").counter().count()).isEqualTo(1);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertThat(events).hasSize(2);
+        RecordedEvent commit = events.stream().filter(event -> "commit".equals(event.getString("operation"))).findFirst().orElseThrow();
+        assertThat(commit.getString("repository")).isEqualTo("repo");
+        assertThat(commit.getString("branch")).isEqualTo("main");
+        assertThat(commit.getInt("objects")).isEqualTo(2);
+        assertThat(commit.getLong("bytes")).isEqualTo(42);
+        assertThat(commit.getBoolean("succeeded")).isTrue();
+    }
+
+    private static ModelRepository repo() {
+        ModelRepository repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath("/repos/repo");
+        return repo;
+    }
+}
@@ -0,0 +1,127 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackMaintenanceSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RepositoryHandleRegistry repositoryHandleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofMinutes(30));
+    private final PackMaintenanceScheduler scheduler = new PackMaintenanceScheduler(new RepositoryConfigurationService(),
+            repositoryHandleRegistry, new GitOperationMetrics(meterRegistry), meterRegistry, 10, 20);
+
+    @AfterEach
+    void tearDown() {
+        repositoryHandleRegistry.closeAll();
+    }
+
+    @Test
+    void maintain_skipsRepositoryBelowThresholds() throws Exception {
+        ModelRepository repo = repoWithCommits(1);
+
+        assertThat(scheduler.maintain(repo, false)).isFalse();
+
+        assertThat(meterRegistry.get("businessmodeler.repository.objects.loose").gauge().value()).isEqualTo(3);
+        assertThat(meterRegistry.get("businessmodeler.repository.maintenance.runs").counter().count()).isZero();
+    }
+
+    @Test
+    void maintain_repacksPrunesAndWritesCommitGraph() throws Exception {
+        ModelRepository repo = repoWithCommits(5);
+
+        assertThat(scheduler.maintain(repo, false)).isTrue();
+
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+            GC.RepoStatistics statistics = handle.repository().statistics();
+            assertThat(statistics.numberOfLooseObjects).isZero();
+            assertThat(statistics.numberOfPackFiles).isEqualTo(1);
+            assertThat(statistics.numberOfBitmaps).isPositive();
+            try (ObjectReader reader = handle.repository().getRepository().newObjectReader()) {
+                assertThat(reader.getCommitGraph()).hasValueSatisfying(graph -> assertThat(graph.getCommitCnt()).isEqualTo(5));
+            }
+            assertThat(handle.repository().log(10)).hasSize(5);
+        }
+        assertThat(meterRegistry.get("businessmodeler.repository.objects.loose").gauge().value()).isZero();
+        assertThat(meterRegistry.get("businessmodeler.repository.packs").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "repack").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "commit-graph").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.repository.maintenance.runs").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void maintain_keepsCommitsMadeWhileItRuns() throws Exception {
+        ModelRepository repo = repoWithCommits(5);
+        AtomicBoolean maintained = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> writer = executor.submit(() -> {
+                try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+                    JGitRepository jgit = handle.repository();
+                    int commits = 0;
+                    while (!maintained.get() || commits < 3) {
+                        ObjectId blobId = jgit.insertBlob(("<definitions version=\"concurrent " + commits + "\"/>").getBytes());
+                        jgit.commitFiles("main", Map.of("concurrent.dmn", blobId), "concurrent " + commits, new PersonIdent("test", "test@test.com"));
+                        commits++;
+                    }
+                    return commits;
+                }
+            });
+
+            assertThat(scheduler.maintain(repo, true)).isTrue();
+            maintained.set(true);
+            int commits = writer.get(30, TimeUnit.SECONDS);
+
+            try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+                JGitRepository jgit = handle.repository();
+                List<RevCommit> log = jgit.log(Integer.MAX_VALUE);
+                assertThat(log).hasSize(5 + commits);
+                for (RevCommit commit : log) {
+                    ObjectId blobId = jgit.blobAt(commit, "model.dmn");
+                    assertThat(jgit.openBlob(blobId).getSize()).isPositive();
+                }
+                assertThat(jgit.openBlob(jgit.blobAt(log.get(0), "concurrent.dmn")).getBytes()).asString()
+                        .isEqualTo("<definitions version=\"concurrent " + (commits - 1) + "\"/>");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ModelRepository repoWithCommits(int commits) throws Exception {
+        Path dir = Files.createTempDirectory("repo");
+        try (Git git = Git.init().setDirectory(dir.toFile()).setInitialBranch("main").call()) {
+            for (int version = 1; version <= commits; version++) {
+                Files.writeString(dir.resolve("model.dmn"), "<definitions version=\"" + version + "\"/>");
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage("version " + version).setAuthor("test", "test@test.com").call();
+            }
+        }
+        ModelRepository repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(dir.toString());
+        repo.setMainBranch("main");
+        return repo;
+    }
+}
@@ -0,0 +1,37 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RepositoryAdmission admission = new RepositoryAdmission(meterRegistry, 1, Duration.ofMillis(50));
+
+    @Test
+    void admit_rejectsBeyondLimitPerRepository() {
+        ModelRepository repo = repoWithPath("/repos/dmn");
+
+        try (RepositoryAdmission.Permit ignored = admission.admit(repo);
+             RepositoryAdmission.Permit other = admission.admit(repoWithPath("/repos/other"))) {
+            assertThatThrownBy(() -> admission.admit(repo)).isInstanceOf(RepositoryBusyException.class);
+        }
+
+        admission.admit(repo).close();
+        assertThat(meterRegistry.get("businessmodeler.repository.admission.rejected").counter().count()).isEqualTo(1);
+    }
+
+    private static ModelRepository repoWithPath(String path) {
+        ModelRepository repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(path);
+        return repo;
+    }
+}
@@ -0,0 +1,149 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class RepositoryBootstrapperTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RepositoryConfigurationService repositoryConfigurationService = new RepositoryConfigurationService();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+    private RepositoryHandleRegistry repositoryHandleRegistry;
+    private RepositoryBootstrapper bootstrapper;
+    private Path remote;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        remote = Files.createTempDirectory("remote");
+        try (Git git = Git.init().setBare(true).setDirectory(remote.toFile()).setInitialBranch("main").call()) {
+            StoredConfig config = git.getRepository().getConfig();
+            config.setBoolean("uploadpack", null, "allowfilter", true);
+            config.save();
+        }
+        Path seed = Files.createTempDirectory("seed");
+        try (Git git = Git.init().setDirectory(seed.toFile()).setInitialBranch("main").call()) {
+            for (int version = 1; version <= 3; version++) {
+                Files.writeString(seed.resolve("readme.md"), "models v" + version);
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage("version " + version).setAuthor("test", "test@test.com").call();
+            }
+            git.remoteAdd().setName("origin").setUri(new URIish(remote.toUri().toString())).call();
+            git.push().setRemote("origin").add("main").call();
+        }
+
+        repositoryHandleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofMinutes(30));
+        bootstrapper = new RepositoryBootstrapper(repositoryConfigurationService, repositoryHandleRegistry,
+                new GitOperationMetrics(meterRegistry), events::add, 4, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bootstrapper.shutdown();
+        repositoryHandleRegistry.closeAll();
+    }
+
+    @Test
+    void bootstrap_clonesMissingRepositoryFromRemote() throws Exception {
+        ModelRepository repo = repo("repo", Files.createTempDirectory("node").resolve("repo"), remote);
+
+        assertThat(bootstrapper.bootstrap(repo)).isTrue();
+
+        assertThat(Path.of(repo.getPath()).resolve("readme.md")).hasContent("models v3");
+        assertThat(events).containsExactly(new RepositoryReadyEvent(repo));
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "clone").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.open").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void bootstrap_shallowPartialCloneFetchesMissingObjectsOnDemand() throws Exception {
+        ModelRepository repo = repo("repo", Files.createTempDirectory("node").resolve("repo"), remote);
+        repo.setCloneDepth(1);
+        repo.setCloneFilter("blob:none");
+
+        assertThat(bootstrapper.bootstrap(repo)).isTrue();
+
+        try (RepositoryHandle handle = repositoryHandleRegistry.acquire(repo)) {
+            JGitRepository jgit = handle.repository();
+            assertThat(jgit.isShallow()).isTrue();
+            assertThat(jgit.partialCloneFilter()).isEqualTo("blob:none");
+            RepositoryFile readme = jgit.indexFiles(jgit.resolveTree(jgit.resolveBranch("main"))).findByName("readme.md");
+            assertThat(jgit.getRepository().getObjectDatabase().has(readme.blobId())).isFalse();
+
+            assertThat(jgit.openBlob(readme.blobId()).getBytes()).asString().isEqualTo("models v3");
+
+            assertThat(jgit.log(10)).extracting(RevCommit::getShortMessage).containsExactly("version 3", "version 2", "version 1");
+            assertThat(jgit.isShallow()).isFalse();
+        }
+    }
+
+    @Test
+    void bootstrap_failsWhenMainBranchOfClonedRepositoryIsMissing() throws Exception {
+        ModelRepository repo = repo("repo", Files.createTempDirectory("node").resolve("repo"), remote);
+        repo.setMainBranch("develop");
+
+        assertThat(bootstrapper.bootstrap(repo)).isFalse();
+
+        assertThat(bootstrapper.statuses()).extracting(RepositoryBootstrapper.Status::state).containsExactly(RepositoryBootstrapper.State.FAILED);
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void bootstrap_createsEmptyRepositoryWithoutRemote() throws Exception {
+        ModelRepository repo = repo("local", Files.createTempDirectory("node").resolve("local"), remote);
+        repo.setRemoteUrl(null);
+
+        assertThat(bootstrapper.bootstrap(repo)).isTrue();
+
+        assertThat(JGitRepository.isGitRepo(Path.of(repo.getPath()).toFile())).isTrue();
+    }
+
+    @Test
+    void bootstrapConfiguredRepositories_reportsReadinessPerRepository() throws Exception {
+        Path node = Files.createTempDirectory("node");
+        ModelRepository cloned = repo("cloned", node.resolve("cloned"), remote);
+        ModelRepository broken = repo("broken", node.resolve("broken"), remote.resolve("missing"));
+        repositoryConfigurationService.setRepositories(List.of(cloned, broken));
+        RepositoriesHealthIndicator healthIndicator = new RepositoriesHealthIndicator(bootstrapper);
+        assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        bootstrapper.bootstrapConfiguredRepositories();
+        bootstrapper.completion().get(30, TimeUnit.SECONDS);
+
+        assertThat(bootstrapper.statuses())
+                .extracting(RepositoryBootstrapper.Status::name, RepositoryBootstrapper.Status::state)
+                .containsExactlyInAnyOrder(
+                        tuple("cloned", RepositoryBootstrapper.State.READY),
+                        tuple("broken", RepositoryBootstrapper.State.FAILED));
+        assertThat(events).containsExactly(new RepositoryReadyEvent(cloned));
+        assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(healthIndicator.health().getDetails()).containsEntry("project/cloned", RepositoryBootstrapper.State.READY);
+    }
+
+    private static ModelRepository repo(String name, Path path, Path remote) {
+        ModelRepository repo = new ModelRepository();
+        repo.setName(name);
+        repo.setProjectCode("project");
+        repo.setPath(path.toString());
+        repo.setMainBranch("main");
+        repo.setRemoteUrl(remote.toUri().toString());
+        return repo;
+    }
+}
@@ -0,0 +1,58 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryConfigurationServiceTest {
+
+    private final RepositoryConfigurationService service = new RepositoryConfigurationService();
+
+    @Test
+    void findByProjectCodeAndName_ignoresCaseAndPrefersFirstConfigured() {
+        ModelRepository first = repo("PRJ", "Models");
+        ModelRepository duplicate = repo("prj", "models");
+        service.setRepositories(List.of(first, duplicate, repo("other", "models")));
+
+        assertThat(service.findByProjectCodeAndName("prj", "MODELS")).containsSame(first);
+        assertThat(service.findByName("models")).containsSame(first);
+        assertThat(service.findByProjectCodeAndName("missing", "models")).isEmpty();
+        assertThat(service.findByProjectCodeAndName(null, "models")).isEmpty();
+    }
+
+    @Test
+    void setRepositories_replacesIndex() {
+        service.setRepositories(List.of(repo("prj", "old")));
+        service.setRepositories(List.of(repo("prj", "new")));
+
+        assertThat(service.findByProjectCodeAndName("prj", "old")).isEmpty();
+        assertThat(service.findByProjectCodeAndName("prj", "new")).isPresent();
+        assertThat(service.getRepositories()).hasSize(1);
+    }
+
+    @Test
+    void bindTo_countsHitsAndMisses() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service.bindTo(meterRegistry);
+        service.setRepositories(List.of(repo("prj", "models")));
+
+        service.findByProjectCodeAndName("prj", "models");
+        service.findByProjectCodeAndName("prj", "missing");
+        service.findByName("models");
+
+        assertThat(meterRegistry.get("businessmodeler.repository.config.lookups").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("businessmodeler.repository.config.lookups").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    private static ModelRepository repo(String projectCode, String name) {
+        ModelRepository repo = new ModelRepository();
+        repo.setProjectCode(projectCode);
+        repo.setName(name);
+        repo.setPath("/repos/" + name);
+        return repo;
+    }
+}
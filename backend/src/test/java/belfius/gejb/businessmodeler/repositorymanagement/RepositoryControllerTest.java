@@ -3,29 +3,42 @@ package belfius.gejb.businessmodeler.repositorymanagement;
 import belfius.gejb.businessmodeler.model.ModelRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(RepositoryController.class)
@@ -50,11 +63,25 @@ class RepositoryControllerTest {
     void listBranches_returnsBranches() throws Exception {
         ModelRepository repo = repoWithPath(initGitRepo());
         when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
-        when(repositoryManager.listBranches(repo)).thenReturn(List.of("main", "feature/test"));
+        BranchListing listing = new BranchListing(List.of("refs/heads/feature/test"), List.of("refs/remotes/origin/feature/test"), 1, 1);
+        when(repositoryManager.listBranches(repo, "feature/", 0, 50)).thenReturn(listing);
 
-        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/branches", PROJECT_CODE, REPO_NAME))
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/branches", PROJECT_CODE, REPO_NAME)
+                        .param("prefix", "feature/")
+                        .param("limit", "50"))
                 .andExpect(status().isOk())
-                .andExpect(content().json(objectMapper.writeValueAsString(List.of("main", "feature/test"))));
+                .andExpect(content().json(objectMapper.writeValueAsString(listing)));
+    }
+
+    @Test
+    void listBranches_returnsServiceUnavailableWhenRepositoryBusy() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.listBranches(repo, null, 0, Integer.MAX_VALUE)).thenThrow(new RepositoryBusyException("busy"));
+
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/branches", PROJECT_CODE, REPO_NAME))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
     }
 
     @Test
@@ -108,6 +135,74 @@ class RepositoryControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void getFile_streamsBase64Content() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        RepositoryFile file = new RepositoryFile("models/test.txt", ObjectId.zeroId());
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.getFile("test.txt", repo, "main")).thenReturn(file);
+        doAnswer(writeContent("hello")).when(repositoryManager).writeFile(eq(file), eq(repo), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/file", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .param("fileName", "test.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Base64.getEncoder().encodeToString("hello".getBytes())));
+    }
+
+    @Test
+    void getRawFile_streamsBinaryContent() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        RepositoryFile file = new RepositoryFile("models/test.txt", ObjectId.zeroId());
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.getFile("test.txt", repo, "main")).thenReturn(file);
+        doAnswer(writeContent("hello")).when(repositoryManager).writeFile(eq(file), eq(repo), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/file/raw", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .param("fileName", "test.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(content().bytes("hello".getBytes()));
+    }
+
+    @Test
+    void getFile_returnsNotModifiedWithoutReadingBlob() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        RepositoryFile file = new RepositoryFile("models/test.txt", ObjectId.fromString("b6fc4c620b67d95f953a5c1c1230aaab5db5a1b0"));
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.getFile("test.txt", repo, "main")).thenReturn(file);
+
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/file", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .param("fileName", "test.txt")
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"" + file.blobId().name() + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"" + file.blobId().name() + "\""));
+
+        verify(repositoryManager, never()).writeFile(any(), any(), any());
+    }
+
+    @Test
+    void getFile_returnsNotFoundWhenFileMissing() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.getFile("missing.txt", repo, "main")).thenReturn(null);
+
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/file", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .param("fileName", "missing.txt"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void commitFile_returnsServerErrorOnIoException() throws Exception {
         Path gitRepo = initGitRepo();
@@ -150,18 +245,134 @@ class RepositoryControllerTest {
     }
 
     @Test
-    void listFiles_returnsServerErrorOnGitIssues() throws Exception {
+    void commitFile_reportsUnchangedContent() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.commitFile(any(CommitFileRequest.class), eq(repo))).thenReturn(false);
+
+        mockMvc.perform(
+                        multipart("/repository-management/{projectCode}/{repositoryName}/commit-file", PROJECT_CODE, REPO_NAME)
+                                .file(new MockMultipartFile("file", "test.txt", MediaType.TEXT_PLAIN_VALUE, "hello".getBytes()))
+                                .param("branch", "main")
+                                .param("commitMessage", "msg")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unchanged").value(true));
+    }
+
+    @Test
+    void commitFile_returnsConflictWithCurrentHead() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        ObjectId head = ObjectId.fromString("0123456789abcdef0123456789abcdef01234567");
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.commitFile(any(CommitFileRequest.class), eq(repo))).thenThrow(new CommitConflictException("moved", head));
+
+        mockMvc.perform(
+                        multipart("/repository-management/{projectCode}/{repositoryName}/commit-file", PROJECT_CODE, REPO_NAME)
+                                .file(new MockMultipartFile("file", "test.txt", MediaType.TEXT_PLAIN_VALUE, "hello".getBytes()))
+                                .param("branch", "main")
+                                .param("commitMessage", "msg")
+                                .param("expectedHead", "fedcba9876543210fedcba9876543210fedcba98")
+                )
+                .andExpect(status().isConflict())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"" + head.name() + "\""))
+                .andExpect(jsonPath("$.currentHead").value(head.name()));
+
+        verify(repositoryManager).commitFile(argThat(request -> "fedcba9876543210fedcba9876543210fedcba98".equals(request.getExpectedHead())), eq(repo));
+    }
+
+    @Test
+    void commitFiles_passesAllPartsInOneRequest() throws Exception {
+        Path gitRepo = initGitRepo();
+        ModelRepository repo = repoWithPath(gitRepo);
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME))
+                .thenReturn(Optional.of(repo));
+        when(repositoryManager.commitFiles(any(CommitFilesRequest.class), eq(repo))).thenReturn(true);
+
+        mockMvc.perform(
+                        multipart("/repository-management/{projectCode}/{repositoryName}/commit-files", PROJECT_CODE, REPO_NAME)
+                                .file(new MockMultipartFile("files", "a.dmn", MediaType.APPLICATION_XML_VALUE, "a".getBytes()))
+                                .file(new MockMultipartFile("files", "b.dmn", MediaType.APPLICATION_XML_VALUE, "b".getBytes()))
+                                .param("branch", "main")
+                                .param("commitMessage", "msg")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unchanged").value(false));
+
+        verify(repositoryManager).commitFiles(
+                argThat(request -> request.getFiles().size() == 2 && "msg".equals(request.getCommitMessage())),
+                eq(repo)
+        );
+    }
+
+    @Test
+    void commitFiles_returnsBadRequestOnInvalidInput() throws Exception {
+        Path gitRepo = initGitRepo();
+        ModelRepository repo = repoWithPath(gitRepo);
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME))
+                .thenReturn(Optional.of(repo));
+        doThrow(new IllegalArgumentException("invalid")).when(repositoryManager).commitFiles(any(CommitFilesRequest.class), eq(repo));
+
+        mockMvc.perform(
+                        multipart("/repository-management/{projectCode}/{repositoryName}/commit-files", PROJECT_CODE, REPO_NAME)
+                                .param("commitMessage", "msg")
+                )
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void listFiles_returnsServerErrorOnIoException() throws Exception {
         Path gitRepo = initGitRepo();
         ModelRepository repo = repoWithPath(gitRepo);
         when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME))
                 .thenReturn(Optional.of(repo));
-        when(repositoryManager.listFiles(repo)).thenThrow(new org.eclipse.jgit.api.errors.GitAPIException("fail") {});
+        when(repositoryManager.resolveTree(repo, "main")).thenThrow(new IOException("fail"));
 
         mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/files", PROJECT_CODE, REPO_NAME)
                         .param("branch", "main"))
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void listFiles_returnsTreeEntriesWithETag() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        ObjectId treeId = ObjectId.fromString("4b825dc642cb6eb9a060e54bf8d69288fbee4904");
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.resolveTree(repo, "main")).thenReturn(treeId);
+        when(repositoryManager.listFiles(eq(repo), eq(treeId), argThat(request -> request.isRecursive() && request.getLimit() == 10)))
+                .thenReturn(List.of("a.dmn", "models"));
+
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/files", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .param("recursive", "true")
+                        .param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"" + treeId.name() + "\""))
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of("a.dmn", "models"))));
+    }
+
+    @Test
+    void listFiles_returnsNotModifiedWhenTreeUnchanged() throws Exception {
+        ModelRepository repo = repoWithPath(initGitRepo());
+        ObjectId treeId = ObjectId.fromString("4b825dc642cb6eb9a060e54bf8d69288fbee4904");
+        when(repositoryConfigurationService.findByProjectCodeAndName(PROJECT_CODE, REPO_NAME)).thenReturn(Optional.of(repo));
+        when(repositoryManager.resolveTree(repo, "main")).thenReturn(treeId);
+
+        mockMvc.perform(get("/repository-management/{projectCode}/{repositoryName}/files", PROJECT_CODE, REPO_NAME)
+                        .param("branch", "main")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + treeId.name() + "\""))
+                .andExpect(status().isNotModified());
+
+        verify(repositoryManager, never()).listFiles(any(), any(), any());
+    }
+
+    private static Answer<Void> writeContent(String content) {
+        return invocation -> {
+            invocation.getArgument(2, OutputStream.class).write(content.getBytes());
+            return null;
+        };
+    }
+
     private static ModelRepository repoWithPath(Path path) {
         ModelRepository repo = new ModelRepository();
         repo.setName(REPO_NAME);
@@ -0,0 +1,85 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryHandleRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void acquire_reusesOpenHandle() throws Exception {
+        RepositoryHandleRegistry registry = registry(Duration.ofMinutes(30));
+        ModelRepository repo = repoWithPath(initGitRepo());
+
+        try (RepositoryHandle first = registry.acquire(repo);
+             RepositoryHandle second = registry.acquire(repo)) {
+            assertThat(second.repository()).isSameAs(first.repository());
+            assertThat(meterRegistry.get("businessmodeler.repository.handles.leased").gauge().value()).isEqualTo(2);
+        }
+
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.opened").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.leased").gauge().value()).isZero();
+        registry.closeAll();
+    }
+
+    @Test
+    void evictIdleHandles_keepsLeasedHandlesOpen() throws Exception {
+        RepositoryHandleRegistry registry = registry(Duration.ZERO);
+        ModelRepository repo = repoWithPath(initGitRepo());
+
+        RepositoryHandle lease = registry.acquire(repo);
+        registry.evictIdleHandles();
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.open").gauge().value()).isEqualTo(1);
+
+        lease.close();
+        registry.evictIdleHandles();
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.open").gauge().value()).isZero();
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.evicted").counter().count()).isEqualTo(1);
+
+        try (RepositoryHandle reopened = registry.acquire(repo)) {
+            assertThat(reopened.repository()).isNotSameAs(lease.repository());
+        }
+        registry.closeAll();
+    }
+
+    @Test
+    void acquire_failsForMissingRepositoryWithoutCreatingIt() throws Exception {
+        RepositoryHandleRegistry registry = registry(Duration.ofMinutes(30));
+        Path missing = Files.createTempDirectory("node").resolve("repo");
+
+        assertThatThrownBy(() -> registry.acquire(repoWithPath(missing)))
+                .isInstanceOf(RepositoryMissingException.class);
+
+        assertThat(missing).doesNotExist();
+        assertThat(meterRegistry.get("businessmodeler.repository.handles.open").gauge().value()).isZero();
+    }
+
+    private RepositoryHandleRegistry registry(Duration idleTimeout) {
+        return new RepositoryHandleRegistry(meterRegistry, idleTimeout);
+    }
+
+    private static ModelRepository repoWithPath(Path path) {
+        ModelRepository repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(path.toString());
+        repo.setMainBranch("main");
+        return repo;
+    }
+
+    private static Path initGitRepo() throws Exception {
+        Path dir = Files.createTempDirectory("repo");
+        Git.init().setDirectory(dir.toFile()).call().close();
+        return dir;
+    }
+}
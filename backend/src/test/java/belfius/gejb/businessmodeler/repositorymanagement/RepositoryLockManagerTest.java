@@ -0,0 +1,40 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryLockManagerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RepositoryLockManager lockManager = new RepositoryLockManager(meterRegistry, 64);
+
+    @Test
+    void lockBranchForWrite_excludesWritersOnSameBranch() throws Exception {
+        ModelRepository repo = repoWithPath("/repos/dmn");
+
+        CompletableFuture<Void> secondWriter;
+        try (RepositoryLockManager.RepositoryLock ignored = lockManager.lockBranchForWrite(repo, "main")) {
+            secondWriter = CompletableFuture.runAsync(() -> lockManager.lockBranchForWrite(repo, "refs/heads/main").close());
+            assertThatThrownBy(() -> secondWriter.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        }
+
+        secondWriter.get(5, TimeUnit.SECONDS);
+        assertThat(meterRegistry.get("businessmodeler.repository.lock.wait").tag("mode", "write").timer().count()).isEqualTo(2);
+    }
+
+    private static ModelRepository repoWithPath(String path) {
+        ModelRepository repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(path);
+        return repo;
+    }
+}
@@ -0,0 +1,476 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryManagerTest {
+
+    private static final int ADMISSION_PERMITS = 4;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GitOperationMetrics gitOperationMetrics = new GitOperationMetrics(meterRegistry);
+    private RepositoryHandleRegistry repositoryHandleRegistry;
+    private PushScheduler pushScheduler;
+    private final BranchSnapshotCache branchSnapshotCache = new BranchSnapshotCache();
+    private final RepositoryAdmission repositoryAdmission = new RepositoryAdmission(meterRegistry, ADMISSION_PERMITS, Duration.ofSeconds(5));
+    private RepositoryManager repositoryManager;
+    private ModelRepository repo;
+    private Path remote;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        remote = Files.createTempDirectory("remote");
+        Git.init().setBare(true).setDirectory(remote.toFile()).setInitialBranch("main").call().close();
+        Path local = Files.createTempDirectory("repo");
+        try (Git git = Git.init().setDirectory(local.toFile()).setInitialBranch("main").call()) {
+            Files.writeString(local.resolve("readme.md"), "models");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").setAuthor("test", "test@test.com").call();
+            git.remoteAdd().setName("origin").setUri(new URIish(remote.toUri().toString())).call();
+            git.push().setRemote("origin").add("main").call();
+        }
+
+        repo = new ModelRepository();
+        repo.setName("repo");
+        repo.setProjectCode("project");
+        repo.setPath(local.toString());
+        repo.setMainBranch("main");
+
+        repositoryHandleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofMinutes(30));
+        // background pushes are effectively disabled, tests flush explicitly
+        pushScheduler = new PushScheduler(repositoryHandleRegistry, meterRegistry,
+                gitOperationMetrics, 1, Duration.ofHours(1), Duration.ofHours(1), Duration.ofHours(1));
+        repositoryManager = new RepositoryManager(
+                repositoryHandleRegistry,
+                new TreeFileIndexCache(16),
+                new BlobCache(meterRegistry, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false),
+                new RepositoryLockManager(meterRegistry, 8),
+                pushScheduler,
+                branchSnapshotCache,
+                repositoryAdmission,
+                gitOperationMetrics
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        pushScheduler.shutdown();
+        repositoryHandleRegistry.closeAll();
+        branchSnapshotCache.close();
+    }
+
+    @Test
+    void commitFile_commitsWithoutTouchingWorkingTree() throws Exception {
+        repositoryManager.commitFile(commitRequest("main", "models/loan.dmn", "<definitions/>"), repo);
+
+        RepositoryFile file = repositoryManager.getFile("loan.dmn", repo, "main");
+        assertThat(file.path()).isEqualTo("models/loan.dmn");
+        assertThat(read(file)).isEqualTo("<definitions/>");
+        assertThat(Path.of(repo.getPath()).resolve("models/loan.dmn")).doesNotExist();
+        pushScheduler.flush(repo);
+        try (Git remoteGit = Git.open(remote.toFile())) {
+            assertThat(remoteGit.getRepository().resolve("main")).isEqualTo(headOf("main"));
+        }
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "commit").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "push").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.git.operation.bytes").tag("operation", "file.read").summary().totalAmount())
+                .isEqualTo("<definitions/>".length());
+    }
+
+    @Test
+    void writeFile_streamsBlobTooLargeForCache() throws Exception {
+        String model = "<definitions>" + "x".repeat(100_000) + "</definitions>";
+        repositoryManager.commitFile(commitRequest("main", "models/large.dmn", model), repo);
+        RepositoryFile file = repositoryManager.getFile("large.dmn", repo, "main");
+
+        assertThat(read(file)).isEqualTo(model);
+        assertThat(read(file)).isEqualTo(model);
+
+        assertThat(meterRegistry.get("businessmodeler.repository.blob-cache.size").gauge().value()).isZero();
+        assertThat(meterRegistry.get("businessmodeler.git.operation.bytes").tag("operation", "file.read").summary().totalAmount())
+                .isEqualTo(2 * model.length());
+    }
+
+    @Test
+    void commitFile_streamsUploadWithoutBufferingIt() throws Exception {
+        CommitFileRequest request = commitRequest("main", "models/loan.dmn", "<definitions/>");
+        request.setFile(new MockMultipartFile("file", "models/loan.dmn", "application/xml", "<definitions/>".getBytes()) {
+            @Override
+            public byte[] getBytes() {
+                throw new AssertionError("upload must be streamed");
+            }
+        });
+
+        repositoryManager.commitFile(request, repo);
+
+        assertThat(read(repositoryManager.getFile("loan.dmn", repo, "main"))).isEqualTo("<definitions/>");
+    }
+
+    @Test
+    void commitFile_rejectsPathsOutsideRepository() {
+        assertThatThrownBy(() -> repositoryManager.commitFile(commitRequest("main", "../escape.dmn", "x"), repo))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void commitFile_rejectsEmptyAndGitPathComponents() throws Exception {
+        ObjectId head = headOf("main");
+        for (String fileName : List.of(".", "./", "a/..", "x/.git/y", ".GIT/y", "models/.git/config")) {
+            assertThatThrownBy(() -> repositoryManager.commitFile(commitRequest("main", fileName, "x"), repo))
+                    .as(fileName)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(headOf("main")).isEqualTo(head);
+    }
+
+    @Test
+    void commitFiles_commitsAllFilesAsOneCommit() throws Exception {
+        ObjectId before = headOf("main");
+        CommitFilesRequest request = new CommitFilesRequest();
+        request.setFiles(List.of(
+                new MockMultipartFile("files", "models/a.dmn", "application/xml", "a".getBytes()),
+                new MockMultipartFile("files", "models/b.dmn", "application/xml", "b".getBytes())
+        ));
+        request.setBranch("main");
+        request.setCommitMessage("bulk import");
+
+        repositoryManager.commitFiles(request, repo);
+
+        assertThat(read(repositoryManager.getFile("a.dmn", repo, "main"))).isEqualTo("a");
+        assertThat(read(repositoryManager.getFile("b.dmn", repo, "main"))).isEqualTo("b");
+        try (Git git = Git.open(Path.of(repo.getPath()).toFile())) {
+            assertThat(git.log().addRange(before, headOf("main")).call()).hasSize(1);
+        }
+        assertThat(repositoryManager.pendingPushes(repo)).containsOnlyKeys("main");
+    }
+
+    @Test
+    void commitFile_skipsContentBranchAlreadyHolds() throws Exception {
+        assertThat(repositoryManager.commitFile(commitRequest("main", "models/loan.dmn", "<definitions/>"), repo)).isTrue();
+        pushScheduler.flush(repo);
+        ObjectId head = headOf("main");
+
+        assertThat(repositoryManager.commitFile(commitRequest("main", "models/loan.dmn", "<definitions/>"), repo)).isFalse();
+
+        assertThat(headOf("main")).isEqualTo(head);
+        assertThat(repositoryManager.pendingPushes(repo)).isEmpty();
+        assertThat(repositoryManager.commitFile(commitRequest("main", "models/loan.dmn", "<definitions version=\"2\"/>"), repo)).isTrue();
+        assertThat(headOf("main")).isNotEqualTo(head);
+    }
+
+    @Test
+    void commitFile_unchangedSaveWritesNoObjects() throws Exception {
+        String model = "<definitions>" + "x".repeat(100_000) + "</definitions>";
+        assertThat(repositoryManager.commitFile(commitRequest("main", "models/large.dmn", model), repo)).isTrue();
+        long objects = looseObjects();
+
+        assertThat(repositoryManager.commitFile(commitRequest("main", "models/large.dmn", model), repo)).isFalse();
+
+        assertThat(looseObjects()).isEqualTo(objects);
+        assertThat(meterRegistry.get("businessmodeler.git.operation.bytes").tag("operation", "commit").summary().totalAmount())
+                .as("only the first save inserted the upload")
+                .isEqualTo(model.length());
+    }
+
+    @Test
+    void commitFile_rejectsStaleExpectedHead() throws Exception {
+        ObjectId base = headOf("main");
+        CommitFileRequest first = commitRequest("main", "loan.dmn", "v1");
+        first.setExpectedHead(base.name());
+        assertThat(repositoryManager.commitFile(first, repo)).isTrue();
+        ObjectId head = headOf("main");
+
+        CommitFileRequest stale = commitRequest("main", "loan.dmn", "v2");
+        stale.setExpectedHead(base.name());
+
+        assertThatThrownBy(() -> repositoryManager.commitFile(stale, repo))
+                .isInstanceOfSatisfying(CommitConflictException.class, e -> assertThat(e.getCurrentHead()).isEqualTo(head));
+        assertThat(headOf("main")).isEqualTo(head);
+        assertThat(read(repositoryManager.getFile("loan.dmn", repo, "main"))).isEqualTo("v1");
+    }
+
+    @Test
+    void commitFile_concurrentWritersWithoutExpectedHeadAllLand() throws Exception {
+        ObjectId before = headOf("main");
+        int writers = 4;
+        CyclicBarrier start = new CyclicBarrier(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<Boolean>> commits = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                String fileName = "model-" + i + ".dmn";
+                commits.add(executor.submit(() -> {
+                    start.await();
+                    return repositoryManager.commitFile(commitRequest("main", fileName, fileName), repo);
+                }));
+            }
+            for (Future<Boolean> commit : commits) {
+                assertThat(commit.get(30, TimeUnit.SECONDS)).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < writers; i++) {
+            assertThat(read(repositoryManager.getFile("model-" + i + ".dmn", repo, "main"))).isEqualTo("model-" + i + ".dmn");
+        }
+        try (Git git = Git.open(Path.of(repo.getPath()).toFile())) {
+            assertThat(git.log().addRange(before, headOf("main")).call()).hasSize(writers);
+        }
+    }
+
+    @Test
+    void commitFiles_commitsOnlyChangedFiles() throws Exception {
+        CommitFilesRequest request = new CommitFilesRequest();
+        request.setFiles(List.of(
+                new MockMultipartFile("files", "readme.md", "text/markdown", "models".getBytes()),
+                new MockMultipartFile("files", "models/a.dmn", "application/xml", "a".getBytes())
+        ));
+        request.setBranch("main");
+        request.setCommitMessage("import");
+        ObjectId before = headOf("main");
+
+        assertThat(repositoryManager.commitFiles(request, repo)).isTrue();
+        assertThat(meterRegistry.get("businessmodeler.git.operation.bytes").tag("operation", "commit").summary().totalAmount()).isEqualTo("a".length());
+
+        ObjectId after = headOf("main");
+        assertThat(repositoryManager.commitFiles(request, repo)).isFalse();
+        assertThat(headOf("main")).isEqualTo(after).isNotEqualTo(before);
+    }
+
+    @Test
+    void commitFiles_rejectsDuplicatePaths() {
+        CommitFilesRequest request = new CommitFilesRequest();
+        request.setFiles(List.of(
+                new MockMultipartFile("files", "a.dmn", "application/xml", "1".getBytes()),
+                new MockMultipartFile("files", "./a.dmn", "application/xml", "2".getBytes())
+        ));
+        request.setCommitMessage("bulk import");
+
+        assertThatThrownBy(() -> repositoryManager.commitFiles(request, repo))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void listFiles_honoursPathDepthAndPaging() throws Exception {
+        CommitFilesRequest request = new CommitFilesRequest();
+        request.setFiles(List.of(
+                new MockMultipartFile("files", "models/credit/a.dmn", "application/xml", "a".getBytes()),
+                new MockMultipartFile("files", "models/credit/b.dmn", "application/xml", "b".getBytes()),
+                new MockMultipartFile("files", "models/c.dmn", "application/xml", "c".getBytes())
+        ));
+        request.setBranch("main");
+        request.setCommitMessage("models");
+        repositoryManager.commitFiles(request, repo);
+        ObjectId treeId = repositoryManager.resolveTree(repo, "main");
+
+        assertThat(repositoryManager.listFiles(repo, treeId, listRequest(null, false, null)))
+                .containsExactly("models", "readme.md");
+        assertThat(repositoryManager.listFiles(repo, treeId, listRequest("models", false, null)))
+                .containsExactly("models/c.dmn", "models/credit");
+        assertThat(repositoryManager.listFiles(repo, treeId, listRequest(null, true, null)))
+                .containsExactly("models/c.dmn", "models/credit/a.dmn", "models/credit/b.dmn", "readme.md");
+        assertThat(repositoryManager.listFiles(repo, treeId, listRequest("models", false, 2)))
+                .containsExactly("models/c.dmn", "models/credit/a.dmn", "models/credit/b.dmn");
+        ListFilesRequest page = listRequest(null, true, null);
+        page.setOffset(1);
+        page.setLimit(2);
+        assertThat(repositoryManager.listFiles(repo, treeId, page))
+                .containsExactly("models/credit/a.dmn", "models/credit/b.dmn");
+        assertThat(repositoryManager.listFiles(repo, treeId, listRequest("missing", false, null))).isNull();
+        assertThat(repo.getMainBranch()).isEqualTo("main");
+    }
+
+    @Test
+    void createBranch_branchesFromSourceWithoutCheckout() throws Exception {
+        repositoryManager.commitFile(commitRequest("main", "loan.dmn", "v1"), repo);
+
+        repositoryManager.createBranch("feature/x", "main", repo);
+        repositoryManager.commitFile(commitRequest("feature/x", "loan.dmn", "v2"), repo);
+
+        assertThat(read(repositoryManager.getFile("loan.dmn", repo, "main"))).isEqualTo("v1");
+        assertThat(read(repositoryManager.getFile("loan.dmn", repo, "feature/x"))).isEqualTo("v2");
+        pushScheduler.flush(repo);
+        BranchListing branches = repositoryManager.listBranches(repo, "feature/", 0, Integer.MAX_VALUE);
+        assertThat(branches.local()).containsExactly("refs/heads/feature/x");
+        assertThat(branches.remote()).containsExactly("refs/remotes/origin/feature/x");
+    }
+
+    @Test
+    void listBranches_refreshesSnapshotWhenRefsChange() throws Exception {
+        assertThat(repositoryManager.listBranches(repo, null, 0, Integer.MAX_VALUE).local()).containsExactly("refs/heads/main");
+
+        repositoryManager.createBranch("feature/b", "main", repo);
+        repositoryManager.createBranch("feature/a", "main", repo);
+
+        BranchListing firstPage = repositoryManager.listBranches(repo, "feature/", 0, 1);
+        assertThat(firstPage.local()).containsExactly("refs/heads/feature/a");
+        assertThat(firstPage.localTotal()).isEqualTo(2);
+        assertThat(repositoryManager.listBranches(repo, "feature/", 1, 1).local()).containsExactly("refs/heads/feature/b");
+    }
+
+    @Test
+    void getFile_coalescesIdenticalConcurrentReads() throws Exception {
+        repositoryManager.commitFile(commitRequest("main", "models/loan.dmn", "<definitions/>"), repo);
+        int requests = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<RepositoryAdmission.Permit> permits = new ArrayList<>();
+        try {
+            // the first lookup waits for a permit until every other request has joined it
+            for (int i = 0; i < ADMISSION_PERMITS; i++) {
+                permits.add(repositoryAdmission.admit(repo));
+            }
+            List<Future<RepositoryFile>> lookups = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                lookups.add(executor.submit(() -> repositoryManager.getFile("loan.dmn", repo, "main")));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(4);
+            while (coalescedLookups() < requests - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            permits.forEach(RepositoryAdmission.Permit::close);
+            permits.clear();
+
+            for (Future<RepositoryFile> lookup : lookups) {
+                assertThat(lookup.get(30, TimeUnit.SECONDS).path()).isEqualTo("models/loan.dmn");
+            }
+        } finally {
+            permits.forEach(RepositoryAdmission.Permit::close);
+            executor.shutdownNow();
+        }
+
+        assertThat(meterRegistry.get("businessmodeler.git.operation").tag("operation", "file.lookup").tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(coalescedLookups()).isEqualTo(requests - 1);
+    }
+
+    private double coalescedLookups() {
+        Counter coalesced = meterRegistry.find("businessmodeler.git.operation.coalesced").tag("operation", "file.lookup").counter();
+        return coalesced == null ? 0 : coalesced.count();
+    }
+
+    @Test
+    void commitFile_coalescesPendingPushesAndJournalsThem() throws Exception {
+        repositoryManager.commitFile(commitRequest("main", "a.dmn", "a"), repo);
+        repositoryManager.commitFile(commitRequest("main", "b.dmn", "b"), repo);
+        repositoryManager.createBranch("feature/y", "main", repo);
+
+        assertThat(repositoryManager.pendingPushes(repo)).containsOnlyKeys("main", "feature/y");
+        assertThat(journal()).exists();
+
+        pushScheduler.flush(repo);
+
+        assertThat(repositoryManager.pendingPushes(repo)).isEmpty();
+        assertThat(journal()).doesNotExist();
+        try (Git remoteGit = Git.open(remote.toFile())) {
+            assertThat(remoteGit.getRepository().resolve("main")).isEqualTo(headOf("main"));
+            assertThat(remoteGit.getRepository().resolve("feature/y")).isEqualTo(headOf("main"));
+        }
+    }
+
+    @Test
+    void flush_keepsBranchPendingWhenPushFails() throws Exception {
+        repositoryManager.commitFile(commitRequest("main", "a.dmn", "a"), repo);
+        try (Git git = Git.open(Path.of(repo.getPath()).toFile())) {
+            git.remoteSetUrl().setRemoteName("origin").setRemoteUri(new URIish(remote.resolve("missing").toUri().toString())).call();
+        }
+
+        pushScheduler.flush(repo);
+
+        assertThat(meterRegistry.get("businessmodeler.git.operation.errors").tag("operation", "push").counter().count()).isEqualTo(1);
+        PushScheduler.PendingPush pending = repositoryManager.pendingPushes(repo).get("main");
+        assertThat(pending.getAttempts()).isEqualTo(1);
+        assertThat(pending.getLastError()).isNotBlank();
+        assertThat(Files.readAllLines(journal())).containsExactly("main");
+    }
+
+    @Test
+    void flush_doesNotRetryBranchRejectedByRemote() throws Exception {
+        Path other = Files.createTempDirectory("other");
+        try (Git git = Git.cloneRepository().setURI(remote.toUri().toString()).setDirectory(other.toFile()).call()) {
+            Files.writeString(other.resolve("other.dmn"), "other");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("elsewhere").setAuthor("other", "other@test.com").call();
+            git.push().call();
+        }
+        repositoryManager.commitFile(commitRequest("main", "a.dmn", "a"), repo);
+
+        pushScheduler.flush(repo);
+        pushScheduler.flush(repo);
+
+        PushScheduler.PendingPush pending = repositoryManager.pendingPushes(repo).get("main");
+        assertThat(pending.isRejected()).isTrue();
+        assertThat(pending.getAttempts()).isEqualTo(1);
+        assertThat(pending.getLastError()).contains("REJECTED_NONFASTFORWARD");
+        assertThat(meterRegistry.get("businessmodeler.repository.push.rejected").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("businessmodeler.repository.push.lag").gauge().value()).isZero();
+        assertThat(Files.readAllLines(journal())).containsExactly("main");
+    }
+
+    private ObjectId headOf(String branch) throws Exception {
+        try (Git git = Git.open(Path.of(repo.getPath()).toFile())) {
+            return git.getRepository().resolve("refs/heads/" + branch);
+        }
+    }
+
+    private long looseObjects() throws Exception {
+        Path objects = Path.of(repo.getPath()).resolve(".git").resolve("objects");
+        try (Stream<Path> files = Files.walk(objects)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.startsWith(objects.resolve("pack")) && !file.startsWith(objects.resolve("info")))
+                    .count();
+        }
+    }
+
+    private Path journal() {
+        return Path.of(repo.getPath()).resolve(".git").resolve(PushScheduler.JOURNAL_FILE);
+    }
+
+    private String read(RepositoryFile file) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        repositoryManager.writeFile(file, repo, content);
+        return content.toString();
+    }
+
+    private static ListFilesRequest listRequest(String path, boolean recursive, Integer depth) {
+        ListFilesRequest request = new ListFilesRequest();
+        request.setPath(path);
+        request.setRecursive(recursive);
+        request.setDepth(depth);
+        return request;
+    }
+
+    private static CommitFileRequest commitRequest(String branch, String fileName, String content) {
+        CommitFileRequest request = new CommitFileRequest();
+        request.setFile(new MockMultipartFile("file", fileName, "application/xml", content.getBytes()));
+        request.setBranch(branch);
+        request.setCommitMessage("update " + fileName);
+        request.setAuthorName("author");
+        request.setAuthorEmail("author@test.com");
+        return request;
+    }
+}
@@ -0,0 +1,101 @@
+package belfius.gejb.businessmodeler.repositorymanagement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_sharesLoadInFlightWithIdenticalCalls() throws Exception {
+        CountDownLatch joined = new CountDownLatch(7);
+        AtomicInteger loads = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("main:loan.dmn", () -> {
+                loads.incrementAndGet();
+                await(joined);
+                return "loan";
+            }, joined::countDown)));
+        }
+
+        for (Future<String> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("loan");
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.inFlight()).isZero();
+        assertThat(singleFlight.execute("main:loan.dmn", () -> "reloaded", () -> { })).isEqualTo("reloaded");
+    }
+
+    @Test
+    void execute_propagatesFailureToCallersSharingTheLoad() throws Exception {
+        CountDownLatch joined = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.execute("main:loan.dmn", () -> {
+            await(joined);
+            throw new IOException("object database unavailable");
+        }, () -> { }));
+        Future<String> follower = executor.submit(() -> {
+            while (singleFlight.inFlight() == 0) {
+                Thread.onSpinWait();
+            }
+            return singleFlight.execute("main:loan.dmn", () -> "unexpected", joined::countDown);
+        });
+
+        assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("object database unavailable");
+        assertThatThrownBy(() -> follower.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IOException.class)
+                .hasRootCauseMessage("object database unavailable");
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    void forget_letsLaterCallsStartNewLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> singleFlight.execute("main:loan.dmn", () -> {
+            started.countDown();
+            await(release);
+            return "old";
+        }, () -> { }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        singleFlight.forget(key -> key.startsWith("main:"));
+
+        assertThat(singleFlight.execute("main:loan.dmn", () -> "new", () -> { })).isEqualTo("new");
+        release.countDown();
+        assertThat(stale.get(10, TimeUnit.SECONDS)).isEqualTo("old");
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+}
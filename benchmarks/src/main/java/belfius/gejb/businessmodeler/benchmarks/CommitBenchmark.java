@@ -0,0 +1,45 @@
+package belfius.gejb.businessmodeler.benchmarks;
+
+import belfius.gejb.businessmodeler.repositorymanagement.CommitFileRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-file commits through {@code RepositoryManager.commitFile}, i.e. blob insert, tree rewrite,
+ * commit and ref update. Every invocation changes the content, so no commit is a no-op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+
+    @State(Scope.Thread)
+    public static class Revision {
+        private int next;
+    }
+
+    @Benchmark
+    public void commitFile(RepositoryBenchmarkState state, Revision revision) throws Exception {
+        int file = revision.next % state.files;
+        CommitFileRequest request = new CommitFileRequest();
+        request.setFile(new MockMultipartFile("file", "models/group-" + (file % 20) + "/decision-" + file + ".dmn",
+                "application/xml", SyntheticRepository.dmn(file, 100_000 + revision.next++)));
+        request.setBranch("main");
+        request.setCommitMessage("benchmark revision");
+        request.setAuthorName("bench");
+        request.setAuthorEmail("bench@example.com");
+        state.repositoryManager.commitFile(request, state.modelRepository);
+    }
+}
@@ -0,0 +1,166 @@
+package belfius.gejb.businessmodeler.benchmarks;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import belfius.gejb.businessmodeler.repositorymanagement.BlobCache;
+import belfius.gejb.businessmodeler.repositorymanagement.BranchSnapshotCache;
+import belfius.gejb.businessmodeler.repositorymanagement.GitOperationMetrics;
+import belfius.gejb.businessmodeler.repositorymanagement.JGitRepository;
+import belfius.gejb.businessmodeler.repositorymanagement.PushScheduler;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryAdmission;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryFile;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryHandleRegistry;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryLockManager;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryManager;
+import belfius.gejb.businessmodeler.repositorymanagement.TreeFileIndexCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of file downloads that each have to fetch their blob from the remote, as when many editors
+ * open models right after a node started from a partial clone.
+ * <p>
+ * Every invocation starts from fresh {@code blob:none} clones of one remote, one per repository, and
+ * submits {@value #REQUESTS} requests that each look up a different file with {@code RepositoryManager.getFile}
+ * and download it with {@code writeFile}, so every request fetches its blob through JGit. The requests are
+ * spread over {@code repositories} repositories and run either on a pool of {@value #PLATFORM_WORKERS}
+ * platform threads (Tomcat's default worker count) or on one virtual thread each. The remote is reached
+ * over {@code file://}, so a real network adds its round trips on top of the fetch cost measured here.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RemoteOperationScalingBenchmark {
+
+    private static final int REQUESTS = 400;
+    private static final int PLATFORM_WORKERS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1", "8"})
+    public int repositories;
+
+    @Param({"16"})
+    public int maxConcurrentPerRepository;
+
+    private SyntheticRepository remote;
+    private ExecutorService executor;
+    private Path clones;
+    private RepositoryHandleRegistry handleRegistry;
+    private PushScheduler pushScheduler;
+    private BranchSnapshotCache branchSnapshotCache;
+    private RepositoryManager repositoryManager;
+    private List<ModelRepository> modelRepositories;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        remote = new SyntheticRepository(REQUESTS, 0, 0);
+        try (Git git = Git.open(Path.of(remote.getModelRepository().getPath()).toFile())) {
+            StoredConfig config = git.getRepository().getConfig();
+            config.setBoolean("uploadpack", null, "allowfilter", true);
+            config.save();
+        }
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_WORKERS);
+    }
+
+    @Setup(Level.Invocation)
+    public void cloneRepositories() throws Exception {
+        clones = Files.createTempDirectory("business-modeler-bench-clones");
+        modelRepositories = new ArrayList<>();
+        for (int i = 0; i < repositories; i++) {
+            ModelRepository modelRepository = new ModelRepository();
+            modelRepository.setName("repo-" + i);
+            modelRepository.setProjectCode("bench");
+            modelRepository.setPath(clones.resolve("repo-" + i).toString());
+            modelRepository.setMainBranch("main");
+            modelRepository.setRemoteUrl(Path.of(remote.getModelRepository().getPath()).toUri().toString());
+            modelRepository.setCloneDepth(1);
+            modelRepository.setCloneFilter("blob:none");
+            JGitRepository.cloneRepository(modelRepository);
+            modelRepositories.add(modelRepository);
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GitOperationMetrics gitOperationMetrics = new GitOperationMetrics(meterRegistry);
+        handleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofHours(1));
+        pushScheduler = new PushScheduler(handleRegistry, meterRegistry,
+                gitOperationMetrics, 1, Duration.ofDays(1), Duration.ofDays(1), Duration.ofDays(1));
+        branchSnapshotCache = new BranchSnapshotCache();
+        repositoryManager = new RepositoryManager(
+                handleRegistry,
+                new TreeFileIndexCache(256),
+                new BlobCache(meterRegistry, DataSize.ofMegabytes(64), DataSize.ofMegabytes(4), false),
+                new RepositoryLockManager(meterRegistry, 64),
+                pushScheduler,
+                branchSnapshotCache,
+                new RepositoryAdmission(meterRegistry, maxConcurrentPerRepository, Duration.ofMinutes(1)),
+                gitOperationMetrics
+        );
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteClones() throws Exception {
+        pushScheduler.shutdown();
+        handleRegistry.closeAll();
+        branchSnapshotCache.close();
+        FileSystemUtils.deleteRecursively(clones);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        remote.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void downloadsFetchingFromRemote() throws Exception {
+        List<String> fileNames = remote.getFileNames();
+        List<Future<?>> requests = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            ModelRepository modelRepository = modelRepositories.get(i % modelRepositories.size());
+            String fileName = fileNames.get(i);
+            requests.add(executor.submit(() -> {
+                RepositoryFile file = repositoryManager.getFile(fileName, modelRepository, "main");
+                repositoryManager.writeFile(file, modelRepository, OutputStream.nullOutputStream());
+                return null;
+            }));
+        }
+        for (Future<?> request : requests) {
+            request.get();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package belfius.gejb.businessmodeler.benchmarks;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import belfius.gejb.businessmodeler.repositorymanagement.BlobCache;
+import belfius.gejb.businessmodeler.repositorymanagement.BranchSnapshotCache;
+import belfius.gejb.businessmodeler.repositorymanagement.GitOperationMetrics;
+import belfius.gejb.businessmodeler.repositorymanagement.PushScheduler;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryAdmission;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryHandleRegistry;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryLockManager;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryManager;
+import belfius.gejb.businessmodeler.repositorymanagement.TreeFileIndexCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * A synthetic repository of the configured size together with the repository layer wired the way
+ * the application wires it. Background pushes are parked, so no remote is involved.
+ */
+@State(Scope.Benchmark)
+public class RepositoryBenchmarkState {
+
+    @Param({"200", "2000"})
+    public int files;
+
+    @Param({"10", "2000"})
+    public int branches;
+
+    @Param({"50"})
+    public int historyDepth;
+
+    public SyntheticRepository repository;
+    public ModelRepository modelRepository;
+    public RepositoryHandleRegistry handleRegistry;
+    public RepositoryManager repositoryManager;
+    private PushScheduler pushScheduler;
+    private BranchSnapshotCache branchSnapshotCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = new SyntheticRepository(files, branches, historyDepth);
+        modelRepository = repository.getModelRepository();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GitOperationMetrics gitOperationMetrics = new GitOperationMetrics(meterRegistry);
+        handleRegistry = new RepositoryHandleRegistry(meterRegistry, Duration.ofHours(1));
+        pushScheduler = new PushScheduler(handleRegistry, meterRegistry,
+                gitOperationMetrics, 1, Duration.ofDays(1), Duration.ofDays(1), Duration.ofDays(1));
+        branchSnapshotCache = new BranchSnapshotCache();
+        repositoryManager = new RepositoryManager(
+                handleRegistry,
+                new TreeFileIndexCache(256),
+                new BlobCache(meterRegistry, DataSize.ofMegabytes(64), DataSize.ofMegabytes(4), false),
+                new RepositoryLockManager(meterRegistry, 64),
+                pushScheduler,
+                branchSnapshotCache,
+                new RepositoryAdmission(meterRegistry, 64, Duration.ofMinutes(1)),
+                gitOperationMetrics
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pushScheduler.shutdown();
+        handleRegistry.closeAll();
+        branchSnapshotCache.close();
+        repository.close();
+    }
+}
@@ -0,0 +1,116 @@
+package belfius.gejb.businessmodeler.benchmarks;
+
+import belfius.gejb.businessmodeler.repositorymanagement.BranchListing;
+import belfius.gejb.businessmodeler.repositorymanagement.JGitRepository;
+import belfius.gejb.businessmodeler.repositorymanagement.ListFilesRequest;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryFile;
+import belfius.gejb.businessmodeler.repositorymanagement.RepositoryHandle;
+import belfius.gejb.businessmodeler.repositorymanagement.TreeFileIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths of the repository layer: file lookup, file download, tree listing and branch listing.
+ * <p>
+ * {@code indexFiles} and {@code listLocalBranches} measure the uncached JGit work, the other
+ * benchmarks go through {@code RepositoryManager} with its caches warm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryReadBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        String nextFile(RepositoryBenchmarkState state) {
+            List<String> fileNames = state.repository.getFileNames();
+            return fileNames.get(next++ % fileNames.size());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+        ObjectId treeId;
+        ListFilesRequest recursive;
+
+        @Setup(Level.Trial)
+        public void setUp(RepositoryBenchmarkState state) throws Exception {
+            treeId = state.repositoryManager.resolveTree(state.modelRepository, "main");
+            recursive = new ListFilesRequest();
+            recursive.setRecursive(true);
+        }
+    }
+
+    @Benchmark
+    public TreeFileIndex indexFiles(RepositoryBenchmarkState state, Tree tree) throws Exception {
+        try (RepositoryHandle handle = state.handleRegistry.acquire(state.modelRepository)) {
+            return handle.repository().indexFiles(tree.treeId);
+        }
+    }
+
+    @Benchmark
+    public RepositoryFile findFileByName(RepositoryBenchmarkState state, Cursor cursor) throws Exception {
+        return state.repositoryManager.getFile(cursor.nextFile(state), state.modelRepository, "main");
+    }
+
+    @Benchmark
+    public void getFile(RepositoryBenchmarkState state, Cursor cursor, Blackhole blackhole) throws Exception {
+        RepositoryFile file = state.repositoryManager.getFile(cursor.nextFile(state), state.modelRepository, "main");
+        state.repositoryManager.writeFile(file, state.modelRepository, new BlackholeOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public List<String> listFiles(RepositoryBenchmarkState state, Tree tree) throws Exception {
+        return state.repositoryManager.listFiles(state.modelRepository, tree.treeId, tree.recursive);
+    }
+
+    @Benchmark
+    public List<String> listLocalBranches(RepositoryBenchmarkState state) throws Exception {
+        try (RepositoryHandle handle = state.handleRegistry.acquire(state.modelRepository)) {
+            JGitRepository repository = handle.repository();
+            return repository.listLocalBranches();
+        }
+    }
+
+    @Benchmark
+    public BranchListing listBranches(RepositoryBenchmarkState state) throws Exception {
+        return state.repositoryManager.listBranches(state.modelRepository, "feature/", 0, 100);
+    }
+
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        private BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package belfius.gejb.businessmodeler.benchmarks;
+
+import belfius.gejb.businessmodeler.model.ModelRepository;
+import belfius.gejb.businessmodeler.repositorymanagement.JGitRepository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A throw-away git repository filled with generated DMN files.
+ * <p>
+ * The initial commit holds {@code files} decision models spread over a few directories, followed by
+ * {@code historyDepth} commits that each change one model. {@code branches} feature branches point
+ * at the tip of main, each with a matching remote-tracking ref as if it had been fetched.
+ */
+public class SyntheticRepository implements AutoCloseable {
+
+    private static final int DIRECTORIES = 20;
+
+    private final Path directory;
+    private final ModelRepository modelRepository;
+    private final List<String> fileNames = new ArrayList<>();
+
+    public SyntheticRepository(int files, int branches, int historyDepth) throws IOException, GitAPIException {
+        this.directory = Files.createTempDirectory("business-modeler-bench");
+        Git.init().setDirectory(directory.toFile()).setInitialBranch("main").call().close();
+
+        this.modelRepository = new ModelRepository();
+        modelRepository.setName("bench");
+        modelRepository.setProjectCode("bench");
+        modelRepository.setPath(directory.toString());
+        modelRepository.setMainBranch("main");
+
+        PersonIdent author = new PersonIdent("bench", "bench@example.com");
+        try (JGitRepository repository = new JGitRepository(modelRepository)) {
+            Map<String, ObjectId> initial = new LinkedHashMap<>();
+            for (int i = 0; i < files; i++) {
+                String fileName = "decision-" + i + ".dmn";
+                fileNames.add(fileName);
+                initial.put("models/group-" + (i % DIRECTORIES) + "/" + fileName, repository.insertBlob(dmn(i, 0)));
+            }
+            repository.commitFiles("main", initial, "initial models", author);
+
+            for (int revision = 1; revision <= historyDepth; revision++) {
+                int file = revision % files;
+                String path = "models/group-" + (file % DIRECTORIES) + "/decision-" + file + ".dmn";
+                repository.commitFiles("main", Map.of(path, repository.insertBlob(dmn(file, revision))), "revision " + revision, author);
+            }
+
+            Repository db = repository.getRepository();
+            ObjectId tip = repository.resolveBranch("main");
+            createRef(db, "refs/remotes/origin/main", tip);
+            for (int i = 0; i < branches; i++) {
+                createRef(db, "refs/heads/feature/branch-" + i, tip);
+                createRef(db, "refs/remotes/origin/feature/branch-" + i, tip);
+            }
+        }
+    }
+
+    public ModelRepository getModelRepository() {
+        return modelRepository;
+    }
+
+    public List<String> getFileNames() {
+        return fileNames;
+    }
+
+    /**
+     * Generate a small decision table whose content differs per file and revision.
+     */
+    public static byte[] dmn(int file, int revision) {
+        return ("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <definitions xmlns="https://www.omg.org/spec/DMN/20191111/MODEL/" id="decision-%1$d" name="Decision %1$d" namespace="bench">
+                  <decision id="d%1$d" name="Decision %1$d">
+                    <decisionTable id="t%1$d" hitPolicy="FIRST">
+                      <input id="i%1$d" label="amount"><inputExpression typeRef="number"><text>amount</text></inputExpression></input>
+                      <output id="o%1$d" name="approved" typeRef="boolean"/>
+                      <rule id="r%1$d"><inputEntry><text>&lt; %2$d</text></inputEntry><outputEntry><text>true</text></outputEntry></rule>
+                    </decisionTable>
+                  </decision>
+                </definitions>
+                """).formatted(file, 1000 + revision).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void createRef(Repository db, String name, ObjectId target) throws IOException {
+        RefUpdate update = db.updateRef(name);
+        update.setNewObjectId(target);
+        update.setExpectedOldObjectId(ObjectId.zeroId());
+        RefUpdate.Result result = update.update();
+        if (result != RefUpdate.Result.NEW) {
+            throw new IOException("Failed to create " + name + ": " + result);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+}